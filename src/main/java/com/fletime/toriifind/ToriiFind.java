@@ -1,6 +1,7 @@
 package com.fletime.toriifind;
 
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.text.Text;
 import org.slf4j.Logger;
@@ -8,16 +9,21 @@ import org.slf4j.LoggerFactory;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.fletime.toriifind.config.SourceConfig;
+import com.fletime.toriifind.service.ApiCacheService;
+import com.fletime.toriifind.service.ApiReplicaService;
+import com.fletime.toriifind.service.DataManifestService;
+import com.fletime.toriifind.service.HttpService;
+import com.fletime.toriifind.service.LandmarkSnapshotService;
+import com.fletime.toriifind.service.LocalDataService;
+import com.fletime.toriifind.service.LynnJsonService;
+import com.fletime.toriifind.service.StartupTimelineService;
+import com.fletime.toriifind.service.TaskExecutorService;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 public class ToriiFind implements ClientModInitializer {
@@ -25,23 +31,60 @@ public class ToriiFind implements ClientModInitializer {
 	public static final int CONFIG_VERSION = 10; // 当前内置的数据版本
 	public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
 	
-	private static SourceConfig sourceConfig;
+	// 后台读取完成前为 null，命令会提示正在初始化
+	private static volatile SourceConfig sourceConfig;
 
 	@Override
 	public void onInitializeClient() {
-		sourceConfig = SourceConfig.loadOrCreateDefault();
-		createOrUpdateConfigFile();
+		StartupTimelineService.Phase phase = StartupTimelineService.begin("main");
 		ToriiFindCommand.register();
+		// 查询结果等主线程任务在每个 tick 中按时间预算执行
+		ClientTickEvents.END_CLIENT_TICK.register(client -> TaskExecutorService.runMainThreadTasks());
 		
-		// 异步初始化和更新数据源
-		initializeAndUpdateDataSources();
+		// 配置读取、资源释放和所有网络请求都在后台进行，不阻塞游戏启动
+		TaskExecutorService.runIo(ToriiFind::initializeInBackground);
+		phase.end();
+	}
+	
+	/**
+	 * 后台初始化：读取配置并释放默认数据文件后，命令即可使用本地已有的数据；
+	 * 之后云端配置文件的检查和数据源的初始化、更新并行进行，全部结束后启动完成
+	 */
+	private static void initializeInBackground() {
+		try {
+			sourceConfig = SourceConfig.loadOrCreateDefault();
+			releaseDefaultConfigFile();
+		} catch (RuntimeException e) {
+			LOGGER.error("[ToriiFind] 初始化失败: " + e.getMessage());
+			StartupTimelineService.complete();
+			return;
+		}
+		LOGGER.info("[ToriiFind] 配置已加载，命令可以使用");
+		
+		java.util.concurrent.CompletableFuture.allOf(
+			TaskExecutorService.runIo(ToriiFind::updateConfigFileFromServer),
+			initializeAndUpdateDataSources()
+		).whenComplete((v, throwable) -> StartupTimelineService.complete());
+	}
+	
+	/**
+	 * 配置是否已加载（加载前命令只提示正在初始化）
+	 */
+	public static boolean isConfigLoaded() {
+		return sourceConfig != null;
 	}
 	
 	/**
 	 * 初始化和更新数据源
+	 * @return 初始化、更新检查和补全预加载全部结束时完成
 	 */
-	private void initializeAndUpdateDataSources() {
-		com.fletime.toriifind.service.LocalDataService.initializeAllDataSources(sourceConfig.getSources())
+	private static java.util.concurrent.CompletableFuture<Void> initializeAndUpdateDataSources() {
+		// API 数据源的离线副本在后台独立同步
+		ApiReplicaService.startBackgroundSync();
+		
+		StartupTimelineService.Phase initPhase = StartupTimelineService.begin("data.init");
+		return com.fletime.toriifind.service.LocalDataService.initializeAllDataSources(sourceConfig.getSources())
+			.whenComplete((v, throwable) -> initPhase.end())
 			.thenCompose(v -> {
 				// 初始化完成后，检查所有数据源的更新
 				LOGGER.info("[ToriiFind] 正在检查数据源更新...");
@@ -73,12 +116,16 @@ public class ToriiFind implements ClientModInitializer {
 				}
 				
 				// 等待所有更新任务完成
+				StartupTimelineService.Phase updatePhase = StartupTimelineService.begin("data.update");
 				return java.util.concurrent.CompletableFuture.allOf(
 					updateTasks.toArray(new java.util.concurrent.CompletableFuture[0])
-				);
+				).whenComplete((result, throwable) -> updatePhase.end());
 			})
 			.thenRun(() -> {
 				LOGGER.info("[ToriiFind] 数据源初始化和更新检查完成");
+				StartupTimelineService.Phase warmUpPhase = StartupTimelineService.begin("suggestions.warmup");
+				warmUpSuggestions();
+				warmUpPhase.end();
 			})
 			.exceptionally(throwable -> {
 				LOGGER.error("[ToriiFind] 数据源初始化失败: " + throwable.getMessage());
@@ -86,6 +133,25 @@ public class ToriiFind implements ClientModInitializer {
 			});
 	}
 	
+	/**
+	 * 预先加载当前数据源的快照和补全索引，避免第一次输入补全时超出时间预算。
+	 * 没有离线副本的 API 数据源不提供补全，不需要预加载
+	 */
+	private static void warmUpSuggestions() {
+		SourceConfig.DataSource current = sourceConfig.getCurrentDataSource();
+		if (current != null && current.isApiMode()
+			&& !ApiReplicaService.hasReplica(getCurrentSourceName(), current)) {
+			return;
+		}
+		try {
+			LandmarkSnapshotService.Snapshot snapshot = LandmarkSnapshotService.getSnapshotForSource(getCurrentSourceName());
+			snapshot.getZerothIndex().prepareSuggestions();
+			snapshot.getHoutuIndex().prepareSuggestions();
+		} catch (Exception e) {
+			LOGGER.warn("[ToriiFind] 预加载补全索引失败: {}", e.getMessage());
+		}
+	}
+	
 	public static SourceConfig getSourceConfig() {
 		return sourceConfig;
 	}
@@ -101,6 +167,7 @@ public class ToriiFind implements ClientModInitializer {
 			if (source.isEnabled()) {
 				sourceConfig.setCurrentSource(sourceName);
 				sourceConfig.safeSave(); // 使用安全保存
+				TaskExecutorService.runCpu(ToriiFind::warmUpSuggestions);
 				return true;
 			}
 		}
@@ -122,6 +189,7 @@ public class ToriiFind implements ClientModInitializer {
 		try {
 			SourceConfig newConfig = SourceConfig.loadOrCreateDefault();
 			sourceConfig = newConfig;
+			ApiCacheService.clear();
 			LOGGER.info("[ToriiFind] 配置文件已重新加载");
 			return true;
 		} catch (Exception e) {
@@ -131,10 +199,10 @@ public class ToriiFind implements ClientModInitializer {
 	}
 	
 	/**
-	 * 检查本地配置文件是否存在或版本过低，必要时释放默认配置。
-	 * 然后与云端配置文件比对版本，自动下载新版本覆盖本地。
+	 * 检查本地配置文件是否存在或版本过低，必要时释放默认配置
 	 */
-	private void createOrUpdateConfigFile() {
+	private static void releaseDefaultConfigFile() {
+		StartupTimelineService.Phase phase = StartupTimelineService.begin("resource.copy");
 		Path configDir = FabricLoader.getInstance().getConfigDir();
 		Path configFile = configDir.resolve("toriifind.json");
 		
@@ -163,28 +231,41 @@ public class ToriiFind implements ClientModInitializer {
 						.getResourceAsStream("assets/" + MOD_ID + "/toriifind.json");
 				
 				if (defaultConfigStream != null) {
-					Files.copy(defaultConfigStream, configFile, StandardCopyOption.REPLACE_EXISTING);
-					defaultConfigStream.close();
+					// 此时命令已可使用，同样经临时文件原子替换
+					try (InputStream in = defaultConfigStream) {
+						LocalDataService.stage(in, configFile).commit();
+					}
+					LandmarkSnapshotService.invalidate(configFile);
 				}
 			} catch (IOException e) {
 				// 忽略异常，后续有日志输出
 			}
 		}
-
-		// 检查云端配置文件版本
+		phase.end();
+	}
+	
+	/**
+	 * 与云端配置文件比对版本，自动下载新版本覆盖本地（在后台执行）
+	 */
+	private static void updateConfigFileFromServer() {
 		String currentSourceUrl = getCurrentSourceUrl();
-		if (currentSourceUrl != null) {
-			try {
-				int localVersion = getConfigFileVersion(configFile);
-				int serverVersion = fetchServerConfigVersion(currentSourceUrl);
-				if (serverVersion > localVersion) {
-					LOGGER.info("[ToriiFind] 检测到云端配置文件有新版本，正在下载...");
-					downloadServerConfig(configFile, currentSourceUrl);
-					LOGGER.info("[ToriiFind] 云端配置文件已更新到最新版本。");
-				}
-			} catch (Exception e) {
-				LOGGER.warn("[ToriiFind] 检查或下载云端配置文件失败：" + e.getMessage());
+		if (currentSourceUrl == null) {
+			return;
+		}
+		StartupTimelineService.Phase phase = StartupTimelineService.begin("config.remote");
+		Path configFile = FabricLoader.getInstance().getConfigDir().resolve("toriifind.json");
+		try {
+			int localVersion = getConfigFileVersion(configFile);
+			int serverVersion = fetchServerConfigVersion(currentSourceUrl);
+			if (serverVersion > localVersion) {
+				LOGGER.info("[ToriiFind] 检测到云端配置文件有新版本，正在下载...");
+				downloadServerConfig(configFile, currentSourceUrl);
+				LOGGER.info("[ToriiFind] 云端配置文件已更新到最新版本。");
 			}
+			phase.end();
+		} catch (Exception e) {
+			LOGGER.warn("[ToriiFind] 检查或下载云端配置文件失败：" + e.getMessage());
+			phase.fail(e);
 		}
 	}
 	
@@ -194,11 +275,12 @@ public class ToriiFind implements ClientModInitializer {
 	 * @return 版本号（无 version 字段时返回 0）
 	 * @throws IOException 读取异常
 	 */
-	private int getConfigFileVersion(Path configFile) throws IOException {
+	private static int getConfigFileVersion(Path configFile) throws IOException {
 		try (Reader reader = Files.newBufferedReader(configFile)) {
-			JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
-			if (jsonObject.has("version")) {
-				return jsonObject.get("version").getAsInt();
+			// 流式读取，找到根级别的 version 后立即停止，不解析整个文件
+			String version = LynnJsonService.readRootVersion(reader);
+			if (version != null) {
+				return Integer.parseInt(version);
 			}
 			return 0; // 如果没有版本号，返回0，表示版本最低
 		}
@@ -210,19 +292,13 @@ public class ToriiFind implements ClientModInitializer {
 	 * @return 云端配置文件版本号（无 version 字段时返回 0）
 	 * @throws IOException 网络或解析异常
 	 */
-	private int fetchServerConfigVersion(String serverUrl) throws IOException {
-		HttpURLConnection conn = (HttpURLConnection) new URL(serverUrl).openConnection();
-		conn.setRequestMethod("GET");
-		conn.setConnectTimeout(5000);
-		conn.setReadTimeout(5000);
-		try (InputStream in = conn.getInputStream()) {
-			String json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
-			JsonObject jsonObject = JsonParser.parseString(json).getAsJsonObject();
-			if (jsonObject.has("version")) {
-				return jsonObject.get("version").getAsInt();
-			}
-			return 0;
+	private static int fetchServerConfigVersion(String serverUrl) throws IOException {
+		String json = HttpService.bodyAsString(HttpService.get(serverUrl, HttpService.RequestKind.API));
+		JsonObject jsonObject = JsonParser.parseString(json).getAsJsonObject();
+		if (jsonObject.has("version")) {
+			return jsonObject.get("version").getAsInt();
 		}
+		return 0;
 	}
 
 	/**
@@ -231,14 +307,19 @@ public class ToriiFind implements ClientModInitializer {
 	 * @param serverUrl 云端配置文件URL
 	 * @throws IOException 网络或写入异常
 	 */
-	private void downloadServerConfig(Path configFile, String serverUrl) throws IOException {
-		HttpURLConnection conn = (HttpURLConnection) new URL(serverUrl).openConnection();
-		conn.setRequestMethod("GET");
-		conn.setConnectTimeout(5000);
-		conn.setReadTimeout(5000);
-		try (InputStream in = conn.getInputStream()) {
-			Files.copy(in, configFile, StandardCopyOption.REPLACE_EXISTING);
+	private static void downloadServerConfig(Path configFile, String serverUrl) throws IOException {
+		// 先写入临时文件并计算 SHA-256，再原子替换，查询不会读到写了一半的文件
+		LocalDataService.StagedFile staged;
+		try (InputStream in = HttpService.body(HttpService.get(serverUrl, HttpService.RequestKind.API))) {
+			staged = LocalDataService.stage(in, configFile);
+		}
+		if (Files.exists(configFile) && staged.getSha256().equals(DataManifestService.sha256(configFile))) {
+			// 内容相同时保留原文件，快照不失效
+			staged.discard();
+			return;
 		}
+		staged.commit();
+		LandmarkSnapshotService.invalidate(configFile);
 	}
 	
 	/**
@@ -1,13 +1,13 @@
 package com.fletime.toriifind;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.mojang.brigadier.Command;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandRegistrationCallback;
 import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
@@ -19,26 +19,40 @@ import net.minecraft.text.MutableText;
 import net.minecraft.text.Style;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
-import net.sourceforge.pinyin4j.PinyinHelper;
-import net.sourceforge.pinyin4j.format.HanyuPinyinCaseType;
-import net.sourceforge.pinyin4j.format.HanyuPinyinOutputFormat;
-import net.sourceforge.pinyin4j.format.HanyuPinyinToneType;
-import net.sourceforge.pinyin4j.format.exception.BadHanyuPinyinOutputFormatCombination;
 import com.fletime.toriifind.config.SourceConfig;
+import com.fletime.toriifind.search.LandmarkIndex;
 import com.fletime.toriifind.service.LynnApiService;
 import com.fletime.toriifind.service.LynnJsonService;
+import com.fletime.toriifind.service.ApiCacheService;
+import com.fletime.toriifind.service.ApiReplicaService;
+import com.fletime.toriifind.service.BinarySnapshotService;
+import com.fletime.toriifind.service.CircuitBreakerService;
+import com.fletime.toriifind.service.DataManifestService;
+import com.fletime.toriifind.service.LandmarkSnapshotService;
+import com.fletime.toriifind.service.LocalDataService;
+import com.fletime.toriifind.service.SingleFlightService;
 import com.fletime.toriifind.service.SourceStatusService;
+import com.fletime.toriifind.service.StartupTimelineService;
+import com.fletime.toriifind.service.QuerySessionService;
+import com.fletime.toriifind.service.TaskExecutorService;
 import com.fletime.toriifind.service.AsyncSourceStatusService;
+import com.fletime.toriifind.service.MirrorScoreService;
 import com.fletime.toriifind.service.MirrorStatusService;
 
 import java.io.IOException;
-import java.io.Reader;
 import java.net.URI;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static net.fabricmc.fabric.api.client.command.v2.ClientCommandManager.argument;
 import static net.fabricmc.fabric.api.client.command.v2.ClientCommandManager.literal;
@@ -48,98 +62,13 @@ import static net.fabricmc.fabric.api.client.command.v2.ClientCommandManager.lit
  * 负责注册 /toriifind 相关命令，并实现数据搜索、拼音支持、结果展示等功能。
  */
 public class ToriiFindCommand {
-    // 零洲数据类
-    private static class Torii {
-        private final String id;
-        private final String name;
-        private final String level;
-
-        /**
-         * 构造函数
-         * @param id 编号
-         * @param name 名称
-         * @param level 等级
-         */
-        public Torii(String id, String name, String level) {
-            this.id = id;
-            this.name = name;
-            this.level = level;
-        }
-
-        @Override
-        public String toString() {
-            return id + " " + level + " " + name;
-        }
-    }
-
-    // 后土数据类
-    private static class Houtu {
-        private final String id;
-        private final String name;
-        private final String level;
-
-        /**
-         * 构造函数
-         * @param id 编号
-         * @param name 名称
-         * @param level 等级
-         */
-        public Houtu(String id, String name, String level) {
-            this.id = id;
-            this.name = name;
-            this.level = level;
-        }
-
-        @Override
-        public String toString() {
-            return id + " " + level + " " + name;
-        }
-    }
-
-    // 拼音格式化工具（单例）
-    private static HanyuPinyinOutputFormat pinyinFormat;
-    private static HanyuPinyinOutputFormat getPinyinFormat() {
-        if (pinyinFormat == null) {
-            pinyinFormat = new HanyuPinyinOutputFormat();
-            // 小写，不带声调
-            pinyinFormat.setCaseType(HanyuPinyinCaseType.LOWERCASE);
-            pinyinFormat.setToneType(HanyuPinyinToneType.WITHOUT_TONE);
-        }
-        return pinyinFormat;
-    }
-    
-    /**
-     * 将中文字符串转换为拼音字符串（不带声调），抄来的，爽
-     * @param chineseStr 中文字符串
-     * @return 对应的拼音字符串，非中文字符保持不变
-     */
-    private static String toPinyin(String chineseStr) {
-        if (chineseStr == null || chineseStr.isEmpty()) {
-            return "";
-        }
-        StringBuilder pinyinBuilder = new StringBuilder();
-        char[] chars = chineseStr.toCharArray();
-        try {
-            for (char c : chars) {
-                // 判断是否是汉字
-                if (Character.toString(c).matches("[\\u4E00-\\u9FA5]+")) {
-                    // 将汉字转为拼音数组（多音字会返回多个拼音）
-                    String[] pinyinArray = PinyinHelper.toHanyuPinyinStringArray(c, getPinyinFormat());
-                    if (pinyinArray != null && pinyinArray.length > 0) {
-                        // 只取第一个拼音（对于多音字）
-                        pinyinBuilder.append(pinyinArray[0]);
-                    }
-                } else {
-                    // 非汉字直接添加
-                    pinyinBuilder.append(c);
-                }
-            }
-        } catch (BadHanyuPinyinOutputFormatCombination e) {
-            // 转换失败时直回原字符串
-            return chineseStr;
-        }
-        return pinyinBuilder.toString();
-    }
+    // 每次按键补全的时间预算（毫秒），超时则本次不显示补全
+    private static final long SUGGESTION_BUDGET_MS = 50;
+    // 最多显示的补全条数
+    private static final int SUGGESTION_LIMIT = 20;
+    // 数据清单中下载时间的显示格式
+    private static final DateTimeFormatter DOWNLOAD_TIME_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
 
     /**
      * 注册所有 toriifind 相关命令
@@ -160,6 +89,9 @@ public class ToriiFindCommand {
      * /toriifind source switch <name>
      * /toriifind source current
      * /toriifind source status
+     * /toriifind near [radius] [limit]
+     * /toriifind stats
+     * /toriifind startup
      * /toriifind ciallo
      */
     private static void registerCommands(CommandDispatcher<FabricClientCommandSource> dispatcher) {
@@ -170,16 +102,21 @@ public class ToriiFindCommand {
                     .executes(context -> showHelp(context)))
                 .then(literal("zeroth")
                     .then(argument("query", StringArgumentType.greedyString())
-                        .executes(context -> searchZerothSmart(context, StringArgumentType.getString(context, "query")))))
+                        .suggests((context, builder) -> suggestLandmarks(builder, true))
+                        .executes(whenReady(context -> searchZerothSmart(context, StringArgumentType.getString(context, "query"))))))
                 .then(literal("houtu")
                     .then(argument("query", StringArgumentType.greedyString())
-                        .executes(context -> searchHoutuSmart(context, StringArgumentType.getString(context, "query")))))
+                        .suggests((context, builder) -> suggestLandmarks(builder, false))
+                        .executes(whenReady(context -> searchHoutuSmart(context, StringArgumentType.getString(context, "query"))))))
                 .then(literal("source")
                     .then(literal("list")
-                        .executes(context -> listSources(context)))
+                        .executes(whenReady(context -> listSources(context))))
                     .then(literal("switch")
                         .then(argument("name", StringArgumentType.string())
                             .suggests((context, builder) -> {
+                                if (!ToriiFind.isConfigLoaded()) {
+                                    return builder.buildFuture();
+                                }
                                 // 自动补全所有可用数据源
                                 for (String name : ToriiFind.getAllSources().keySet()) {
                                     SourceConfig.DataSource ds = ToriiFind.getAllSources().get(name);
@@ -189,18 +126,81 @@ public class ToriiFindCommand {
                                 }
                                 return builder.buildFuture();
                             })
-                            .executes(context -> switchSource(context, StringArgumentType.getString(context, "name")))))
+                            .executes(whenReady(context -> switchSource(context, StringArgumentType.getString(context, "name"))))))
                     .then(literal("current")
-                        .executes(context -> showCurrentSource(context)))
+                        .executes(whenReady(context -> showCurrentSource(context))))
                     .then(literal("check")
-                        .executes(context -> checkAllSources(context)))
+                        .executes(whenReady(context -> checkAllSources(context))))
                     .then(literal("reload")
-                        .executes(context -> reloadConfig(context))))
+                        .executes(whenReady(context -> reloadConfig(context)))))
+                .then(literal("near")
+                    .executes(whenReady(context -> searchNear(context, 0, ToriiFind.getSourceConfig().getMaxResults())))
+                    .then(argument("radius", IntegerArgumentType.integer(1))
+                        .executes(whenReady(context -> searchNear(context, IntegerArgumentType.getInteger(context, "radius"),
+                            ToriiFind.getSourceConfig().getMaxResults())))
+                        .then(argument("limit", IntegerArgumentType.integer(1, 100))
+                            .executes(whenReady(context -> searchNear(context, IntegerArgumentType.getInteger(context, "radius"),
+                                IntegerArgumentType.getInteger(context, "limit")))))))
+                .then(literal("stats")
+                    .executes(whenReady(context -> showStats(context))))
+                .then(literal("startup")
+                    .executes(context -> showStartupTimeline(context)))
                 .then(literal("ciallo")
                     .executes(context -> sendCialloMessage(context)))
         );
     }
 
+    /**
+     * 查询参数的输入补全：按编号、名称、拼音或拼音首字母前缀匹配本地索引。
+     * 只读取本地快照，输入时不会发出网络请求；API 模式的数据源只有在有离线副本时才提供补全，
+     * 否则内置数据与 API 的结果不一致，不显示补全。超过时间预算时本次不显示补全
+     * @param builder 补全构建器
+     * @param zeroth true 为零洲，false 为后土
+     * @return 补全结果
+     */
+    private static CompletableFuture<Suggestions> suggestLandmarks(SuggestionsBuilder builder, boolean zeroth) {
+        String prefix = builder.getRemaining().trim();
+        SourceConfig config = ToriiFind.getSourceConfig();
+        if (prefix.isEmpty() || config == null || usesRemoteApi(config.getCurrentDataSource())) {
+            return builder.buildFuture();
+        }
+        Suggestions empty = builder.createOffset(builder.getStart()).build();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SUGGESTION_BUDGET_MS);
+        // CPU 线程池队列已满时本次不显示补全，不在客户端线程上查询
+        return TaskExecutorService.supplyCpu(() -> {
+            try {
+                LandmarkSnapshotService.Snapshot snapshot = LandmarkSnapshotService.getSnapshotForSource(ToriiFind.getCurrentSourceName());
+                LandmarkIndex index = zeroth ? snapshot.getZerothIndex() : snapshot.getHoutuIndex();
+                for (int ordinal : index.suggest(prefix, SUGGESTION_LIMIT, deadline)) {
+                    LynnApiService.LynnLandmark landmark = index.get(ordinal);
+                    // 编号匹配时补全编号，否则补全名称；另一项作为提示
+                    if (landmark.getId().startsWith(prefix)) {
+                        builder.suggest(landmark.getId(), Text.literal(landmark.getName()));
+                    } else {
+                        builder.suggest(landmark.getName(), Text.literal(landmark.getId()));
+                    }
+                }
+            } catch (Exception e) {
+                // 本地数据不可用时不提供补全
+            }
+            return builder.build();
+        }).exceptionally(throwable -> empty)
+            .completeOnTimeout(empty, SUGGESTION_BUDGET_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 配置在后台加载完成前，依赖配置的命令只提示正在初始化
+     */
+    private static Command<FabricClientCommandSource> whenReady(Command<FabricClientCommandSource> command) {
+        return context -> {
+            if (!ToriiFind.isConfigLoaded()) {
+                context.getSource().sendError(ToriiFind.translate("toriifind.startup.initializing"));
+                return 0;
+            }
+            return command.run(context);
+        };
+    }
+
     /**
      * 显示帮助信息
      */
@@ -216,6 +216,9 @@ public class ToriiFindCommand {
         context.getSource().sendFeedback(ToriiFind.translate("toriifind.help.command.source.current"));
         context.getSource().sendFeedback(ToriiFind.translate("toriifind.help.command.source.check"));
         context.getSource().sendFeedback(ToriiFind.translate("toriifind.help.command.source.reload"));
+        context.getSource().sendFeedback(ToriiFind.translate("toriifind.help.command.near"));
+        context.getSource().sendFeedback(ToriiFind.translate("toriifind.help.command.stats"));
+        context.getSource().sendFeedback(ToriiFind.translate("toriifind.help.command.startup"));
         context.getSource().sendFeedback(ToriiFind.translate("toriifind.help.command.ciallo"));
         context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
         return 1;
@@ -304,6 +307,26 @@ public class ToriiFindCommand {
                     "toriifind.source.current.json", source.getUrl()
                 ));
             }
+
+            // 本地数据信息直接来自数据清单，不读取数据文件
+            DataManifestService.Entry entry = DataManifestService.getValidEntry(LocalDataService.getLocalDataFile(currentSource));
+            if (entry != null) {
+                Text parseStatus = switch (entry.getParseStatus()) {
+                    case DataManifestService.PARSE_OK -> ToriiFind.translate("toriifind.source.parse.ok");
+                    case DataManifestService.PARSE_FAILED -> ToriiFind.translate("toriifind.source.parse.failed", entry.getParseError());
+                    default -> ToriiFind.translate("toriifind.source.parse.unknown");
+                };
+                String sha256 = entry.getSha256() != null ? entry.getSha256().substring(0, 12) : "-";
+                String downloadedAt = DOWNLOAD_TIME_FORMAT.format(Instant.ofEpochMilli(entry.getDownloadedAt()));
+                context.getSource().sendFeedback(ToriiFind.translate(
+                    "toriifind.source.current.manifest",
+                    entry.getVersion() != null ? entry.getVersion() : "-",
+                    (entry.getSize() + 1023) / 1024,
+                    sha256,
+                    downloadedAt,
+                    parseStatus
+                ));
+            }
         } else {
             context.getSource().sendError(Text.translatable("toriifind.source.current.error"));
         }
@@ -316,6 +339,19 @@ public class ToriiFindCommand {
     private static int checkAllSources(CommandContext<FabricClientCommandSource> context) {
         context.getSource().sendFeedback(ToriiFind.translate("toriifind.source.check.start"));
 
+        // 列出熔断中的主机，这些主机的请求会直接失败，并在后台定期探测
+        for (CircuitBreakerService.Breaker breaker : CircuitBreakerService.getOpenBreakers().values()) {
+            String state = breaker.getState() == CircuitBreakerService.State.HALF_OPEN
+                ? ToriiFind.translate("toriifind.source.check.breaker.probing").getString()
+                : ToriiFind.translate("toriifind.source.check.breaker.retry", breaker.getRetryInSeconds()).getString();
+            context.getSource().sendFeedback(ToriiFind.translate(
+                "toriifind.source.check.breaker",
+                breaker.getHost(),
+                breaker.getConsecutiveFailures(),
+                state
+            ));
+        }
+
         Map<String, SourceConfig.DataSource> sources = ToriiFind.getAllSources();
 
         for (Map.Entry<String, SourceConfig.DataSource> entry : sources.entrySet()) {
@@ -326,74 +362,76 @@ public class ToriiFindCommand {
                 // API模式：检查连接状态
                 java.util.concurrent.CompletableFuture.supplyAsync(() -> {
                     return SourceStatusService.checkSourceStatus(dataSource);
-                }).thenAcceptAsync(status -> {
-                    net.minecraft.client.MinecraftClient.getInstance().execute(() -> {
-                        context.getSource().sendFeedback(Text.translatable(
-                            "toriifind.source.check.api",
-                            sourceName,
-                            status.getStatusText()
-                        ));
-                    });
-                });
+                }, TaskExecutorService.io()).thenAcceptAsync(status -> {
+                    context.getSource().sendFeedback(Text.translatable(
+                        "toriifind.source.check.api",
+                        sourceName,
+                        status.getStatusText()
+                    ));
+                }, TaskExecutorService.mainThread());
+                if (ApiReplicaService.isReplicated(dataSource)) {
+                    // 启用了离线副本：同时同步一次
+                    ApiReplicaService.syncAsync(sourceName, dataSource).thenAcceptAsync(updated -> {
+                        String replicaStatus = updated
+                            ? ToriiFind.translate("toriifind.source.check.updated").getString()
+                            : ToriiFind.translate("toriifind.source.check.latest").getString();
+                        context.getSource().sendFeedback(ToriiFind.translate(
+                            "toriifind.source.check.replica", sourceName, replicaStatus));
+                    }, TaskExecutorService.mainThread());
+                }
             } else {
                 // JSON模式：检查更新并下载
                 com.fletime.toriifind.service.LocalDataService.checkAndUpdateDataSource(sourceName, dataSource)
                     .thenAcceptAsync(updated -> {
-                        net.minecraft.client.MinecraftClient.getInstance().execute(() -> {
-                            String updateStatus = updated
-                                ? ToriiFind.translate("toriifind.source.check.updated").getString()
-                                : ToriiFind.translate("toriifind.source.check.latest").getString();
+                        String updateStatus = updated
+                            ? ToriiFind.translate("toriifind.source.check.updated").getString()
+                            : ToriiFind.translate("toriifind.source.check.latest").getString();
 
-                            StringBuilder info = new StringBuilder();
-                            info.append(ToriiFind.translate("toriifind.source.check.json", sourceName, updateStatus).getString());
+                        StringBuilder info = new StringBuilder();
+                        info.append(ToriiFind.translate("toriifind.source.check.json", sourceName, updateStatus).getString());
 
-                            // 显示版本信息（如果存在）
-                            String version = com.fletime.toriifind.service.LocalDataService.getLocalVersion(
-                                com.fletime.toriifind.service.LocalDataService.getLocalDataFile(sourceName));
-                            if (version != null && !version.isEmpty()) {
-                                info.append(ToriiFind.translate("toriifind.source.check.version", version).getString());
-                            }
+                        // 显示版本信息（如果存在）
+                        String version = com.fletime.toriifind.service.LocalDataService.getLocalVersion(
+                            com.fletime.toriifind.service.LocalDataService.getLocalDataFile(sourceName));
+                        if (version != null && !version.isEmpty()) {
+                            info.append(ToriiFind.translate("toriifind.source.check.version", version).getString());
+                        }
 
-                            context.getSource().sendFeedback(Text.literal(info.toString()));
+                        context.getSource().sendFeedback(Text.literal(info.toString()));
 
-                            // 如果有镜像，直接显示镜像状态
-                            if (dataSource.getMirrorUrls() != null && dataSource.getMirrorUrls().length > 0) {
-                                MirrorStatusService.checkAllMirrors(dataSource).thenAccept(mirrorStatuses -> {
-                                    net.minecraft.client.MinecraftClient.getInstance().execute(() -> {
-                                        for (MirrorStatusService.MirrorStatus mirror : mirrorStatuses) {
-                                            String prefix = mirror.isPrimary()
-                                                ? ToriiFind.translate("toriifind.source.check.mirror.primary").getString()
-                                                : ToriiFind.translate("toriifind.source.check.mirror.other").getString();
-                                            String statusIcon = mirror.isAvailable()
-                                                ? ToriiFind.translate("toriifind.source.check.mirror.available").getString()
-                                                : ToriiFind.translate("toriifind.source.check.mirror.unavailable").getString();
+                        // 如果有镜像，直接显示镜像状态
+                        if (dataSource.getMirrorUrls() != null && dataSource.getMirrorUrls().length > 0) {
+                            MirrorStatusService.checkAllMirrors(dataSource).thenAcceptAsync(mirrorStatuses -> {
+                                for (MirrorStatusService.MirrorStatus mirror : mirrorStatuses) {
+                                    String prefix = mirror.isPrimary()
+                                        ? ToriiFind.translate("toriifind.source.check.mirror.primary").getString()
+                                        : ToriiFind.translate("toriifind.source.check.mirror.other").getString();
+                                    String statusIcon = mirror.isAvailable()
+                                        ? ToriiFind.translate("toriifind.source.check.mirror.available").getString()
+                                        : ToriiFind.translate("toriifind.source.check.mirror.unavailable").getString();
 
-                                            StringBuilder line = new StringBuilder();
-                                            line.append("  ").append(prefix).append(" ");
-                                            line.append(statusIcon).append(" ");
-                                            line.append("§f").append(mirror.getUrlDisplayName()).append(" ");
-                                            line.append(mirror.getStatusText());
+                                    StringBuilder line = new StringBuilder();
+                                    line.append("  ").append(prefix).append(" ");
+                                    line.append(statusIcon).append(" ");
+                                    line.append("§f").append(mirror.getUrlDisplayName()).append(" ");
+                                    line.append(mirror.getStatusText());
 
-                                            if (mirror.getVersion() != null) {
-                                                line.append(" §7").append(mirror.getVersion());
-                                            }
+                                    if (mirror.getVersion() != null) {
+                                        line.append(" §7").append(mirror.getVersion());
+                                    }
 
-                                            context.getSource().sendFeedback(Text.literal(line.toString()));
-                                        }
-                                    });
-                                });
-                            }
-                        });
-                    }).exceptionally(throwable -> {
-                        net.minecraft.client.MinecraftClient.getInstance().execute(() -> {
-                            context.getSource().sendError(Text.translatable(
-                                "toriifind.source.check.failed",
-                                sourceName,
-                                throwable.getMessage()
-                            ));
-                        });
+                                    context.getSource().sendFeedback(Text.literal(line.toString()));
+                                }
+                            }, TaskExecutorService.mainThread());
+                        }
+                    }, TaskExecutorService.mainThread()).exceptionallyAsync(throwable -> {
+                        context.getSource().sendError(Text.translatable(
+                            "toriifind.source.check.failed",
+                            sourceName,
+                            throwable.getMessage()
+                        ));
                         return null;
-                    });
+                    }, TaskExecutorService.mainThread());
             }
         }
         
@@ -429,13 +467,164 @@ public class ToriiFindCommand {
         return 1;
     }
 
+    /**
+     * 显示启动时间线：各初始化阶段的开始时间、用时和所在线程
+     */
+    private static int showStartupTimeline(CommandContext<FabricClientCommandSource> context) {
+        context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
+        context.getSource().sendFeedback(ToriiFind.translate(
+            StartupTimelineService.isComplete() ? "toriifind.startup.title" : "toriifind.startup.title.running",
+            StartupTimelineService.getTotalMs()
+        ));
+        for (StartupTimelineService.Phase phase : StartupTimelineService.getPhases()) {
+            Text status;
+            if (phase.isRunning()) {
+                status = ToriiFind.translate("toriifind.startup.status.running");
+            } else if (phase.getError() != null) {
+                status = ToriiFind.translate("toriifind.startup.status.failed", phase.getError());
+            } else {
+                status = ToriiFind.translate("toriifind.startup.status.done");
+            }
+            context.getSource().sendFeedback(ToriiFind.translate(
+                "toriifind.startup.phase",
+                phase.getName(),
+                phase.getOffsetMs(),
+                phase.getDurationMs(),
+                phase.getThread(),
+                status
+            ));
+        }
+        context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
+        return 1;
+    }
+
+    /**
+     * 显示运行统计信息
+     */
+    private static int showStats(CommandContext<FabricClientCommandSource> context) {
+        context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
+        context.getSource().sendFeedback(ToriiFind.translate("toriifind.stats.title"));
+        context.getSource().sendFeedback(ToriiFind.translate(
+            "toriifind.stats.snapshot",
+            LandmarkSnapshotService.getHitCount(),
+            LandmarkSnapshotService.getMissCount(),
+            LandmarkSnapshotService.getCachedCount()
+        ));
+        context.getSource().sendFeedback(ToriiFind.translate(
+            "toriifind.stats.binary",
+            BinarySnapshotService.getLoadedCount(),
+            BinarySnapshotService.getRebuiltCount()
+        ));
+        context.getSource().sendFeedback(ToriiFind.translate(
+            "toriifind.stats.api_cache",
+            ApiCacheService.getHitCount(),
+            ApiCacheService.getStaleHitCount(),
+            ApiCacheService.getMissCount(),
+            ApiCacheService.getSize()
+        ));
+        context.getSource().sendFeedback(ToriiFind.translate(
+            "toriifind.stats.single_flight",
+            SingleFlightService.getInFlightCount(),
+            SingleFlightService.getStartedCount(),
+            SingleFlightService.getCoalescedCount()
+        ));
+        context.getSource().sendFeedback(ToriiFind.translate(
+            "toriifind.stats.cancellation",
+            QuerySessionService.getSupersededCount(),
+            SingleFlightService.getAbortedCount()
+        ));
+        for (TaskExecutorService.TrackedExecutor executor : TaskExecutorService.getExecutors()) {
+            context.getSource().sendFeedback(ToriiFind.translate(
+                "toriifind.stats.executor",
+                executor.getName(),
+                executor.getQueued(),
+                executor.getActive(),
+                executor.getCompleted()
+            ));
+        }
+        context.getSource().sendFeedback(ToriiFind.translate(
+            "toriifind.stats.frame_budget",
+            ToriiFind.getSourceConfig().getFrameBudgetMs(),
+            TaskExecutorService.getDeferredTickCount(),
+            String.format("%.2f", TaskExecutorService.getLongestMainTaskMs())
+        ));
+        for (Map.Entry<String, MirrorScoreService.Score> entry : MirrorScoreService.getAllScores().entrySet()) {
+            MirrorScoreService.Score score = entry.getValue();
+            context.getSource().sendFeedback(ToriiFind.translate(
+                "toriifind.stats.mirror",
+                entry.getKey(),
+                Math.round(score.getLatencyMs()),
+                Math.round(score.getSuccessRate() * 100),
+                score.percentile(0.95)
+            ));
+        }
+        context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
+        return 1;
+    }
+
+    /**
+     * 统一的查询管线：查询（文件读取、解析、匹配或网络请求）和结果文本的生成都在后台线程完成，
+     * 生成的每一行再交给主线程逐行发送，主线程按 frameBudgetMs 分批执行，结果很多时也不会卡顿。
+     * 同一玩家开始新查询时，上一次未完成的查询会被取消，剩余的结果行也不再显示
+     * @param context 命令上下文
+     * @param query 开始查询，返回要显示的各行文本；需要取消的请求应通过会话的 track 登记
+     * @return 执行结果
+     */
+    private static int runQuery(CommandContext<FabricClientCommandSource> context,
+                                Function<QuerySessionService.Session, CompletableFuture<List<Text>>> query) {
+        QuerySessionService.Session session = QuerySessionService.begin(context.getSource());
+        CompletableFuture<List<Text>> lines;
+        try {
+            lines = session.track(query.apply(session));
+        } catch (RuntimeException e) {
+            lines = CompletableFuture.failedFuture(e);
+        }
+        lines.whenComplete((result, throwable) -> {
+            if (session.isCancelled()) {
+                return;
+            }
+            Executor mainThread = TaskExecutorService.mainThread();
+            if (throwable != null) {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+                mainThread.execute(() -> context.getSource().sendError(
+                    ToriiFind.translate("toriifind.error.config", cause.getMessage())));
+                return;
+            }
+            for (Text line : result) {
+                mainThread.execute(() -> {
+                    if (!session.isCancelled()) {
+                        context.getSource().sendFeedback(line);
+                    }
+                });
+            }
+        });
+        return 1;
+    }
+
+    /**
+     * 在后台执行本地数据查询。当前数据源的初始下载还在进行且本地没有旧数据时，
+     * 先提示正在下载并等待它完成，下载结束后立即查询，不必等待其它数据源
+     * @param context 命令上下文
+     * @param task 查询并生成要显示的各行文本
+     * @return 要显示的各行
+     */
+    private static CompletableFuture<List<Text>> queryLocal(CommandContext<FabricClientCommandSource> context,
+                                                           Callable<List<Text>> task) {
+        String sourceName = ToriiFind.getCurrentSourceName();
+        if (!LocalDataService.isReady(sourceName)) {
+            context.getSource().sendFeedback(ToriiFind.translate("toriifind.source.downloading", sourceName));
+        }
+        return LocalDataService.whenReady(sourceName).thenCompose(v -> TaskExecutorService.supplyIo(task));
+    }
+
     /**
      * 按编号查找零洲鸟居
      */
     private static int searchZerothByNumber(CommandContext<FabricClientCommandSource> context, int number) {
         SourceConfig.DataSource currentSource = ToriiFind.getSourceConfig().getCurrentDataSource();
         
-        if (currentSource != null && currentSource.isApiMode()) {
+        if (usesRemoteApi(currentSource)) {
             // Lynn API模式
             return searchLynnByNumber(context, String.valueOf(number), "zth");
         } else {
@@ -448,75 +637,37 @@ public class ToriiFindCommand {
      * 传统JSON模式按编号查找零洲鸟居
      */
     private static int searchZerothByNumberJson(CommandContext<FabricClientCommandSource> context, int number) {
-        List<Torii> results = new ArrayList<>();
-        try {
-            List<Torii> toriiList = loadZerothData();
-            for (Torii torii : toriiList) {
-                if (torii.id.equals(String.valueOf(number))) {
-                    results.add(torii);
-                }
-            }
-            displayZerothResults(context, results);
-        } catch (Exception e) {
-            context.getSource().sendError(ToriiFind.translate("toriifind.error.config", e.getMessage()));
-        }
-        return 1;
+        return runQuery(context, session -> queryLocal(context, () ->
+            renderZerothResults(loadZerothIndex().searchById(String.valueOf(number), true))));
     }
     
     /**
      * Lynn源按编号搜索
      */
     private static int searchLynnByNumber(CommandContext<FabricClientCommandSource> context, String number, String source) {
-        try {
-            SourceConfig.DataSource currentSource = ToriiFind.getSourceConfig().getCurrentDataSource();
-            if (currentSource.isApiMode()) {
-                // API模式：异步查询
-                context.getSource().sendFeedback(ToriiFind.translate("toriifind.query.working"));
-                
-                java.util.concurrent.CompletableFuture.supplyAsync(() -> {
-                    try {
-                        LynnApiService.LynnLandmark landmark = LynnApiService.getLandmarkById(
-                            currentSource.getApiBaseUrl(), source, number);
-                        
-                        List<LynnApiService.LynnLandmark> results = new ArrayList<>();
-                        if (landmark != null) {
-                            results.add(landmark);
-                        }
-                        return results;
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                }).thenAcceptAsync(results -> {
-                    // 在主线程显示结果
-                    net.minecraft.client.MinecraftClient.getInstance().execute(() -> {
-                        displayLynnResults(context, results);
-                    });
-                }).exceptionally(throwable -> {
-                    // 在主线程显示错误
-                    net.minecraft.client.MinecraftClient.getInstance().execute(() -> {
-                        context.getSource().sendError(ToriiFind.translate("toriifind.error.config", throwable.getMessage()));
-                    });
-                    return null;
-                });
-            } else {
-                // JSON模式：加载所有数据然后过滤
-                List<LynnApiService.LynnLandmark> allLandmarks = LynnJsonService.loadFromDataSource(currentSource);
-                List<LynnApiService.LynnLandmark> results = LynnJsonService.filterById(allLandmarks, number);
-                displayLynnResults(context, results);
-            }
-        } catch (Exception e) {
-            context.getSource().sendError(ToriiFind.translate("toriifind.error.config", e.getMessage()));
+        SourceConfig.DataSource currentSource = ToriiFind.getSourceConfig().getCurrentDataSource();
+        if (usesRemoteApi(currentSource)) {
+            // API模式：异步查询
+            context.getSource().sendFeedback(ToriiFind.translate("toriifind.query.working"));
+            return runQuery(context, session -> session
+                .track(LynnApiService.getLandmarkByIdAsync(currentSource.getApiBaseUrl(), source, number))
+                .thenApply(landmark -> renderLynnResults(landmark != null ? List.of(landmark) : List.of())));
         }
-        return 1;
+        // JSON模式：加载所有数据然后过滤
+        return runQuery(context, session -> queryLocal(context, () -> {
+            List<LynnApiService.LynnLandmark> allLandmarks = LynnJsonService.loadFromDataSource(currentSource);
+            return renderLynnResults(LynnJsonService.filterById(allLandmarks, number));
+        }));
     }
     
     /**
-     * 展示Lynn源搜索结果
+     * 生成Lynn源搜索结果的各行文本
      */
-    private static void displayLynnResults(CommandContext<FabricClientCommandSource> context, List<LynnApiService.LynnLandmark> results) {
-        context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
+    private static List<Text> renderLynnResults(List<LynnApiService.LynnLandmark> results) {
+        List<Text> lines = new ArrayList<>();
+        lines.add(ToriiFind.translate("toriifind.divider"));
         if (results.isEmpty()) {
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.result.not_found"));
+            lines.add(ToriiFind.translate("toriifind.result.not_found"));
         } else {
             for (LynnApiService.LynnLandmark landmark : results) {
                 // 基础信息
@@ -549,10 +700,11 @@ public class ToriiFindCommand {
                     ToriiFind.translate("toriifind.result.wiki_link").getString()
                 ).setStyle(linkStyle);
             
-                context.getSource().sendFeedback(baseText.append(linkText));
+                lines.add(baseText.append(linkText));
             }            
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
+            lines.add(ToriiFind.translate("toriifind.divider"));
         }
+        return lines;
     }
 
     /**
@@ -561,7 +713,7 @@ public class ToriiFindCommand {
     private static int searchZerothByNameOrPinyin(CommandContext<FabricClientCommandSource> context, String keyword) {
         SourceConfig.DataSource currentSource = ToriiFind.getSourceConfig().getCurrentDataSource();
         
-        if (currentSource != null && currentSource.isApiMode()) {
+        if (usesRemoteApi(currentSource)) {
             // Lynn API模式
             return searchLynnByName(context, keyword, "zth");
         } else {
@@ -574,71 +726,26 @@ public class ToriiFindCommand {
      * 传统JSON模式按名称或拼音查找零洲鸟居
      */
     private static int searchZerothByNameOrPinyinJson(CommandContext<FabricClientCommandSource> context, String keyword) {
-        List<Torii> results = new ArrayList<>();
-        try {
-            List<Torii> toriiList = loadZerothData();
-            // 首先，按名称进行精确匹配
-            for (Torii torii : toriiList) {
-                if (torii.name.contains(keyword)) {
-                    results.add(torii);
-                }
-            }
-            // 如果没有找到，且关键字由字母组成，则尝试按拼音进行搜索
-            if (results.isEmpty() && keyword.matches("^[a-zA-Z]+$")) {
-                String lowercaseKeyword = keyword.toLowerCase();
-                for (Torii torii : toriiList) {
-                    String namePinyin = toPinyin(torii.name).toLowerCase();
-                    if (namePinyin.contains(lowercaseKeyword)) {
-                        results.add(torii);
-                    }
-                }
-            }
-            displayZerothResults(context, results);
-        } catch (Exception e) {
-            context.getSource().sendError(ToriiFind.translate("toriifind.error.config", e.getMessage()));
-        }
-        return 1;
+        // 先按名称匹配，没有结果且关键字由字母组成时按预先计算的拼音匹配
+        return runQuery(context, session -> queryLocal(context, () ->
+            renderZerothResults(loadZerothIndex().searchByNameOrPinyin(keyword))));
     }
     
     /**
      * Lynn源按名称搜索
      */
     private static int searchLynnByName(CommandContext<FabricClientCommandSource> context, String keyword, String source) {
-        try {
-            SourceConfig.DataSource currentSource = ToriiFind.getSourceConfig().getCurrentDataSource();
-            
-            if (currentSource.isApiMode()) {
-                // API模式：异步查询
-                context.getSource().sendFeedback(ToriiFind.translate("toriifind.query.working"));
-                
-                java.util.concurrent.CompletableFuture.supplyAsync(() -> {
-                    try {
-                        return LynnApiService.searchLandmarks(currentSource.getApiBaseUrl(), source, keyword);
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                }).thenAcceptAsync(results -> {
-                    // 在主线程显示结果
-                    net.minecraft.client.MinecraftClient.getInstance().execute(() -> {
-                        displayLynnResults(context, results);
-                    });
-                }).exceptionally(throwable -> {
-                    // 在主线程显示错误
-                    net.minecraft.client.MinecraftClient.getInstance().execute(() -> {
-                        context.getSource().sendError(ToriiFind.translate("toriifind.error.config", throwable.getMessage()));
-                    });
-                    return null;
-                });
-            } else {
-                // JSON模式：加载所有数据然后过滤
-                List<LynnApiService.LynnLandmark> allLandmarks = LynnJsonService.loadFromDataSource(currentSource);
-                List<LynnApiService.LynnLandmark> results = LynnJsonService.filterByNameOrPinyin(allLandmarks, keyword, ToriiFindCommand::toPinyin);
-                displayLynnResults(context, results);
-            }
-        } catch (Exception e) {
-            context.getSource().sendError(ToriiFind.translate("toriifind.error.config", e.getMessage()));
+        SourceConfig.DataSource currentSource = ToriiFind.getSourceConfig().getCurrentDataSource();
+        if (usesRemoteApi(currentSource)) {
+            // API模式：异步查询
+            context.getSource().sendFeedback(ToriiFind.translate("toriifind.query.working"));
+            return runQuery(context, session -> session
+                .track(LynnApiService.searchLandmarksAsync(currentSource.getApiBaseUrl(), source, keyword))
+                .thenApply(ToriiFindCommand::renderLynnResults));
         }
-        return 1;
+        // JSON模式：使用数据源的索引过滤
+        return runQuery(context, session -> queryLocal(context, () ->
+            renderLynnResults(LynnJsonService.loadIndexFromDataSource(currentSource).searchByNameOrPinyin(keyword))));
     }
 
     /**
@@ -647,7 +754,7 @@ public class ToriiFindCommand {
     private static int searchHoutuByNumber(CommandContext<FabricClientCommandSource> context, String number) {
         SourceConfig.DataSource currentSource = ToriiFind.getSourceConfig().getCurrentDataSource();
         
-        if (currentSource != null && currentSource.isApiMode()) {
+        if (usesRemoteApi(currentSource)) {
             // Lynn API模式
             return searchLynnByNumber(context, number, "houtu");
         } else {
@@ -660,19 +767,8 @@ public class ToriiFindCommand {
      * 传统JSON模式按编号查找后土境地
      */
     private static int searchHoutuByNumberJson(CommandContext<FabricClientCommandSource> context, String number) {
-        List<Houtu> results = new ArrayList<>();
-        try {
-            List<Houtu> houtuList = loadHoutuData();
-            for (Houtu houtu : houtuList) {
-                if (houtu.id.contains(number)) {
-                    results.add(houtu);
-                }
-            }
-            displayHoutuResults(context, results);
-        } catch (Exception e) {
-            context.getSource().sendError(ToriiFind.translate("toriifind.error.config", e.getMessage()));
-        }
-        return 1;
+        return runQuery(context, session -> queryLocal(context, () ->
+            renderHoutuResults(loadHoutuIndex().searchById(number, false))));
     }
 
     /**
@@ -681,7 +777,7 @@ public class ToriiFindCommand {
     private static int searchHoutuByNameOrPinyin(CommandContext<FabricClientCommandSource> context, String keyword) {
         SourceConfig.DataSource currentSource = ToriiFind.getSourceConfig().getCurrentDataSource();
         
-        if (currentSource != null && currentSource.isApiMode()) {
+        if (usesRemoteApi(currentSource)) {
             // Lynn API模式
             return searchLynnByName(context, keyword, "houtu");
         } else {
@@ -694,28 +790,8 @@ public class ToriiFindCommand {
      * 传统JSON模式按名称或拼音查找后土境地
      */
     private static int searchHoutuByNameOrPinyinJson(CommandContext<FabricClientCommandSource> context, String keyword) {
-        List<Houtu> results = new ArrayList<>();
-        try {
-            List<Houtu> houtuList = loadHoutuData();
-            for (Houtu houtu : houtuList) {
-                if (houtu.name.contains(keyword)) {
-                    results.add(houtu);
-                }
-            }
-            if (results.isEmpty() && keyword.matches("^[a-zA-Z]+$")) {
-                String lowercaseKeyword = keyword.toLowerCase();
-                for (Houtu houtu : houtuList) {
-                    String namePinyin = toPinyin(houtu.name).toLowerCase();
-                    if (namePinyin.contains(lowercaseKeyword)) {
-                        results.add(houtu);
-                    }
-                }
-            }
-            displayHoutuResults(context, results);
-        } catch (Exception e) {
-            context.getSource().sendError(ToriiFind.translate("toriifind.error.config", e.getMessage()));
-        }
-        return 1;
+        return runQuery(context, session -> queryLocal(context, () ->
+            renderHoutuResults(loadHoutuIndex().searchByNameOrPinyin(keyword))));
     }
 
     /**
@@ -724,65 +800,40 @@ public class ToriiFindCommand {
      */
     private static int searchZerothSmart(CommandContext<FabricClientCommandSource> context, String query) {
         query = query.trim();
+        if (isRankedSearchEnabled()) {
+            return searchRankedJson(context, query, true);
+        }
         // 判断输入是否为纯数字
         if (query.matches("^\\d+$")) {
             // 获取当前数据源
             SourceConfig.DataSource currentSource = ToriiFind.getSourceConfig().getCurrentDataSource();
             final String finalQuery = query;
             final SourceConfig.DataSource finalSource = currentSource;
-            if (currentSource != null && currentSource.isApiMode()) {
+            if (usesRemoteApi(currentSource)) {
                 // API模式：编号和名称分别异步查找，然后合并去重
                 context.getSource().sendFeedback(ToriiFind.translate("toriifind.query.working"));
-                // 按编号查找
-                java.util.concurrent.CompletableFuture<List<LynnApiService.LynnLandmark>> futureId = java.util.concurrent.CompletableFuture.supplyAsync(() -> {
-                    try {
-                        LynnApiService.LynnLandmark landmark = LynnApiService.getLandmarkById(finalSource.getApiBaseUrl(), "zth", finalQuery);
-                        List<LynnApiService.LynnLandmark> list = new ArrayList<>();
-                        if (landmark != null) list.add(landmark);
-                        return list;
-                    } catch (Exception e) { return new ArrayList<>(); }
-                });
-                // 按名称查找
-                java.util.concurrent.CompletableFuture<List<LynnApiService.LynnLandmark>> futureName = java.util.concurrent.CompletableFuture.supplyAsync(() -> {
-                    try {
-                        return LynnApiService.searchLandmarks(finalSource.getApiBaseUrl(), "zth", finalQuery);
-                    } catch (Exception e) { return new ArrayList<>(); }
-                });
-                // 合并编号和名称查找结果，去重后显示
-                futureId.thenCombine(futureName, (list1, list2) -> {
-                    java.util.LinkedHashMap<String, LynnApiService.LynnLandmark> map = new java.util.LinkedHashMap<>();
-                    for (LynnApiService.LynnLandmark l : list1) map.put(l.getId(), l);
-                    for (LynnApiService.LynnLandmark l : list2) map.put(l.getId(), l);
-                    return new ArrayList<>(map.values());
-                }).thenAcceptAsync(resultsList -> {
-                    net.minecraft.client.MinecraftClient.getInstance().execute(() -> {
-                        displayLynnResults(context, resultsList);
+                return runQuery(context, session -> {
+                    // 按编号查找
+                    CompletableFuture<List<LynnApiService.LynnLandmark>> futureId = session.track(LynnApiService
+                        .getLandmarkByIdAsync(finalSource.getApiBaseUrl(), "zth", finalQuery))
+                        .thenApply(landmark -> landmark != null ? List.of(landmark) : List.<LynnApiService.LynnLandmark>of())
+                        .exceptionally(e -> List.of());
+                    // 按名称查找
+                    CompletableFuture<List<LynnApiService.LynnLandmark>> futureName = session.track(LynnApiService
+                        .searchLandmarksAsync(finalSource.getApiBaseUrl(), "zth", finalQuery))
+                        .exceptionally(e -> List.of());
+                    // 合并编号和名称查找结果，去重后显示
+                    return futureId.thenCombine(futureName, (list1, list2) -> {
+                        java.util.LinkedHashMap<String, LynnApiService.LynnLandmark> map = new java.util.LinkedHashMap<>();
+                        for (LynnApiService.LynnLandmark l : list1) map.put(l.getId(), l);
+                        for (LynnApiService.LynnLandmark l : list2) map.put(l.getId(), l);
+                        return renderLynnResults(new ArrayList<>(map.values()));
                     });
                 });
-                return 1;
             } else {
-                // JSON模式：编号和名称都查找，合并去重
-                try {
-                    List<Torii> toriiList = loadZerothData();
-                    List<Torii> results = new ArrayList<>();
-                    // 按编号查找
-                    for (Torii torii : toriiList) {
-                        if (torii.id.equals(query)) results.add(torii);
-                    }
-                    // 按名称（包括拼音）模糊查找
-                    for (Torii torii : toriiList) {
-                        if (torii.name.contains(query) || toPinyin(torii.name).toLowerCase().contains(query.toLowerCase())) {
-                            boolean exists = false;
-                            for (Torii t : results) if (t.id.equals(torii.id)) { exists = true; break; }
-                            if (!exists) results.add(torii);
-                        }
-                    }
-                    // 显示合并后的结果
-                    displayZerothResults(context, results);
-                } catch (Exception e) {
-                    context.getSource().sendError(ToriiFind.translate("toriifind.error.config", e.getMessage()));
-                }
-                return 1;
+                // JSON模式：按编号精确查找，再按名称（包括拼音）模糊查找，按编号去重
+                return runQuery(context, session -> queryLocal(context, () ->
+                    renderZerothResults(loadZerothIndex().searchSmart(finalQuery, true))));
             }
         } else {
             // 非纯数字，直接按名称查找（支持拼音）
@@ -796,65 +847,40 @@ public class ToriiFindCommand {
      */
     private static int searchHoutuSmart(CommandContext<FabricClientCommandSource> context, String query) {
         query = query.trim();
+        if (isRankedSearchEnabled()) {
+            return searchRankedJson(context, query, false);
+        }
         // 判断输入是否为纯数字
         if (query.matches("^\\d+$")) {
             // 获取当前数据源
             SourceConfig.DataSource currentSource = ToriiFind.getSourceConfig().getCurrentDataSource();
             final String finalQuery = query;
             final SourceConfig.DataSource finalSource = currentSource;
-            if (currentSource != null && currentSource.isApiMode()) {
+            if (usesRemoteApi(currentSource)) {
                 // API模式：编号和名称分别异步查找，然后合并去重
                 context.getSource().sendFeedback(ToriiFind.translate("toriifind.query.working"));
-                // 按编号查找
-                java.util.concurrent.CompletableFuture<List<LynnApiService.LynnLandmark>> futureId = java.util.concurrent.CompletableFuture.supplyAsync(() -> {
-                    try {
-                        LynnApiService.LynnLandmark landmark = LynnApiService.getLandmarkById(finalSource.getApiBaseUrl(), "houtu", finalQuery);
-                        List<LynnApiService.LynnLandmark> list = new ArrayList<>();
-                        if (landmark != null) list.add(landmark);
-                        return list;
-                    } catch (Exception e) { return new ArrayList<>(); }
-                });
-                // 按名称查找
-                java.util.concurrent.CompletableFuture<List<LynnApiService.LynnLandmark>> futureName = java.util.concurrent.CompletableFuture.supplyAsync(() -> {
-                    try {
-                        return LynnApiService.searchLandmarks(finalSource.getApiBaseUrl(), "houtu", finalQuery);
-                    } catch (Exception e) { return new ArrayList<>(); }
-                });
-                // 合并编号和名称查找结果，去重后显示
-                futureId.thenCombine(futureName, (list1, list2) -> {
-                    java.util.LinkedHashMap<String, LynnApiService.LynnLandmark> map = new java.util.LinkedHashMap<>();
-                    for (LynnApiService.LynnLandmark l : list1) map.put(l.getId(), l);
-                    for (LynnApiService.LynnLandmark l : list2) map.put(l.getId(), l);
-                    return new ArrayList<>(map.values());
-                }).thenAcceptAsync(resultsList -> {
-                    net.minecraft.client.MinecraftClient.getInstance().execute(() -> {
-                        displayLynnResults(context, resultsList);
+                return runQuery(context, session -> {
+                    // 按编号查找
+                    CompletableFuture<List<LynnApiService.LynnLandmark>> futureId = session.track(LynnApiService
+                        .getLandmarkByIdAsync(finalSource.getApiBaseUrl(), "houtu", finalQuery))
+                        .thenApply(landmark -> landmark != null ? List.of(landmark) : List.<LynnApiService.LynnLandmark>of())
+                        .exceptionally(e -> List.of());
+                    // 按名称查找
+                    CompletableFuture<List<LynnApiService.LynnLandmark>> futureName = session.track(LynnApiService
+                        .searchLandmarksAsync(finalSource.getApiBaseUrl(), "houtu", finalQuery))
+                        .exceptionally(e -> List.of());
+                    // 合并编号和名称查找结果，去重后显示
+                    return futureId.thenCombine(futureName, (list1, list2) -> {
+                        java.util.LinkedHashMap<String, LynnApiService.LynnLandmark> map = new java.util.LinkedHashMap<>();
+                        for (LynnApiService.LynnLandmark l : list1) map.put(l.getId(), l);
+                        for (LynnApiService.LynnLandmark l : list2) map.put(l.getId(), l);
+                        return renderLynnResults(new ArrayList<>(map.values()));
                     });
                 });
-                return 1;
             } else {
-                // JSON模式：编号和名称都查找，合并去重
-                try {
-                    List<Houtu> houtuList = loadHoutuData();
-                    List<Houtu> results = new ArrayList<>();
-                    // 按编号查找
-                    for (Houtu houtu : houtuList) {
-                        if (houtu.id.contains(query)) results.add(houtu);
-                    }
-                    // 按名称（包括拼音）模糊查找
-                    for (Houtu houtu : houtuList) {
-                        if (houtu.name.contains(query) || toPinyin(houtu.name).toLowerCase().contains(query.toLowerCase())) {
-                            boolean exists = false;
-                            for (Houtu h : results) if (h.id.equals(houtu.id)) { exists = true; break; }
-                            if (!exists) results.add(houtu);
-                        }
-                    }
-                    // 显示合并后的结果
-                    displayHoutuResults(context, results);
-                } catch (Exception e) {
-                    context.getSource().sendError(ToriiFind.translate("toriifind.error.config", e.getMessage()));
-                }
-                return 1;
+                // JSON模式：按编号包含查找，再按名称（包括拼音）模糊查找，按编号去重
+                return runQuery(context, session -> queryLocal(context, () ->
+                    renderHoutuResults(loadHoutuIndex().searchSmart(finalQuery, false))));
             }
         } else {
             // 非纯数字，直接按名称查找（支持拼音）
@@ -863,29 +889,125 @@ public class ToriiFindCommand {
     }
 
     /**
-     * 展示零洲鸟居的搜索结果
-     * @param context 命令上下文
+     * 当前数据源是否需要通过网络 API 查询（API 数据源启用了离线副本且副本已同步时，直接使用本地数据）
+     */
+    private static boolean usesRemoteApi(SourceConfig.DataSource source) {
+        return source != null && source.isApiMode()
+            && !ApiReplicaService.hasReplica(ToriiFind.getCurrentSourceName(), source);
+    }
+
+    /**
+     * 是否对当前数据源使用排序容错搜索（需在配置中开启，且仅适用于本地JSON数据）
+     */
+    private static boolean isRankedSearchEnabled() {
+        SourceConfig config = ToriiFind.getSourceConfig();
+        SourceConfig.DataSource currentSource = config.getCurrentDataSource();
+        return config.isRankedSearch() && !usesRemoteApi(currentSource);
+    }
+
+    /**
+     * 排序容错搜索：按编号、名称、拼音和编辑距离综合打分，只显示得分最高的若干个结果
+     * @param zeroth true 查询零洲，false 查询后土
+     */
+    private static int searchRankedJson(CommandContext<FabricClientCommandSource> context, String query, boolean zeroth) {
+        int maxResults = ToriiFind.getSourceConfig().getMaxResults();
+        return runQuery(context, session -> queryLocal(context, () -> {
+            LandmarkIndex index = zeroth ? loadZerothIndex() : loadHoutuIndex();
+            List<LynnApiService.LynnLandmark> results = index.searchRanked(query, maxResults);
+            return zeroth ? renderZerothResults(results) : renderHoutuResults(results);
+        }));
+    }
+
+    /**
+     * 查询离玩家最近的零洲鸟居和后土境地（按 x/z 水平距离，坐标未知的地标不参与）
+     * @param radius 最大距离，0 表示不限制
+     * @param limit 每个地区最多显示的数量
+     */
+    private static int searchNear(CommandContext<FabricClientCommandSource> context, int radius, int limit) {
+        SourceConfig.DataSource currentSource = ToriiFind.getSourceConfig().getCurrentDataSource();
+        if (usesRemoteApi(currentSource)) {
+            context.getSource().sendError(ToriiFind.translate("toriifind.near.api_mode"));
+            return 0;
+        }
+        // 玩家位置在主线程读取，距离计算在后台进行
+        double x = context.getSource().getPosition().getX();
+        double z = context.getSource().getPosition().getZ();
+        return runQuery(context, session -> queryLocal(context, () -> {
+            LandmarkIndex zerothIndex = loadZerothIndex();
+            LandmarkIndex houtuIndex = loadHoutuIndex();
+            List<Text> lines = new ArrayList<>();
+            renderNearResults(lines, "toriifind.near.title.zeroth", zerothIndex,
+                zerothIndex.searchNearest(x, z, radius, limit), x, z);
+            renderNearResults(lines, "toriifind.near.title.houtu", houtuIndex,
+                houtuIndex.searchNearest(x, z, radius, limit), x, z);
+            lines.add(ToriiFind.translate("toriifind.divider"));
+            return lines;
+        }));
+    }
+
+    /**
+     * 生成附近查询的一个地区的结果，每行附带坐标和距离
+     */
+    private static void renderNearResults(List<Text> lines, String titleKey,
+                                          LandmarkIndex index, int[] ordinals, double x, double z) {
+        lines.add(ToriiFind.translate("toriifind.divider"));
+        lines.add(ToriiFind.translate(titleKey, ordinals.length));
+        if (ordinals.length == 0) {
+            lines.add(ToriiFind.translate("toriifind.result.not_found"));
+            return;
+        }
+        for (int ordinal : ordinals) {
+            LynnApiService.LynnLandmark landmark = index.get(ordinal);
+            String formattedText = String.format(
+                ToriiFind.translate("toriifind.result.format.entry").getString(),
+                landmark.getId(), landmark.getGrade(), landmark.getName()
+            );
+            formattedText += " §7" + landmark.getCoordinates();
+            formattedText += ToriiFind.translate("toriifind.near.distance",
+                Math.round(Math.sqrt(index.horizontalDistanceSquared(ordinal, x, z)))).getString();
+
+            MutableText baseText = Text.literal(formattedText + " ");
+            String wikiUrl = "https://wiki.ria.red/wiki/" + landmark.getName();
+            Style linkStyle = Style.EMPTY
+                .withClickEvent(new ClickEvent.OpenUrl(URI.create(wikiUrl)))
+                .withHoverEvent(new HoverEvent.ShowText(
+                    ToriiFind.translate("toriifind.result.wiki_hover", wikiUrl)
+                ))
+                .withColor(Formatting.AQUA)
+                .withUnderline(true);
+
+            MutableText linkText = Text.literal(
+                ToriiFind.translate("toriifind.result.wiki_link").getString()
+            ).setStyle(linkStyle);
+            lines.add(baseText.append(linkText));
+        }
+    }
+
+    /**
+     * 生成零洲鸟居搜索结果的各行文本
      * @param results 结果列表
+     * @return 要显示的各行
      */
-    private static void displayZerothResults(CommandContext<FabricClientCommandSource> context, List<Torii> results) {
+    private static List<Text> renderZerothResults(List<LynnApiService.LynnLandmark> results) {
+        List<Text> lines = new ArrayList<>();
         if (results.isEmpty()) {
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.result.empty.torii"));
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
+            lines.add(ToriiFind.translate("toriifind.divider"));
+            lines.add(ToriiFind.translate("toriifind.result.empty.torii"));
+            lines.add(ToriiFind.translate("toriifind.divider"));
         } else {
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.result.title", results.size()));
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.result.header.torii"));
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
+            lines.add(ToriiFind.translate("toriifind.divider"));
+            lines.add(ToriiFind.translate("toriifind.result.title", results.size()));
+            lines.add(ToriiFind.translate("toriifind.divider"));
+            lines.add(ToriiFind.translate("toriifind.result.header.torii"));
+            lines.add(ToriiFind.translate("toriifind.divider"));
 
-            for (Torii torii : results) {
+            for (LynnApiService.LynnLandmark torii : results) {
                 String formattedText = String.format(
                     ToriiFind.translate("toriifind.result.format.entry").getString(),
-                    torii.id, torii.level, torii.name
+                    torii.getId(), torii.getGrade(), torii.getName()
                 );
                 MutableText baseText = Text.literal(formattedText + " ");
-                String wikiUrl = "https://wiki.ria.red/wiki/" + torii.name;
+                String wikiUrl = "https://wiki.ria.red/wiki/" + torii.getName();
 
                 Style linkStyle = Style.EMPTY
                     .withClickEvent(new ClickEvent.OpenUrl(URI.create(wikiUrl)))
@@ -898,37 +1020,39 @@ public class ToriiFindCommand {
                 MutableText linkText = Text.literal(
                     ToriiFind.translate("toriifind.result.wiki_link").getString()
                 ).setStyle(linkStyle);
-                context.getSource().sendFeedback(baseText.append(linkText));
+                lines.add(baseText.append(linkText));
             }
             
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
+            lines.add(ToriiFind.translate("toriifind.divider"));
         }
+        return lines;
     }
 
     /**
-     * 展示后土数据的搜索结果
-     * @param context 命令上下文
+     * 生成后土数据搜索结果的各行文本
      * @param results 结果列表
+     * @return 要显示的各行
      */
-    private static void displayHoutuResults(CommandContext<FabricClientCommandSource> context, List<Houtu> results) {
+    private static List<Text> renderHoutuResults(List<LynnApiService.LynnLandmark> results) {
+        List<Text> lines = new ArrayList<>();
         if (results.isEmpty()) {
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.result.empty.houtu"));
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
+            lines.add(ToriiFind.translate("toriifind.divider"));
+            lines.add(ToriiFind.translate("toriifind.result.empty.houtu"));
+            lines.add(ToriiFind.translate("toriifind.divider"));
         } else {
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.result.title", results.size()));
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.result.header.houtu"));
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
+            lines.add(ToriiFind.translate("toriifind.divider"));
+            lines.add(ToriiFind.translate("toriifind.result.title", results.size()));
+            lines.add(ToriiFind.translate("toriifind.divider"));
+            lines.add(ToriiFind.translate("toriifind.result.header.houtu"));
+            lines.add(ToriiFind.translate("toriifind.divider"));
 
-            for (Houtu houtu : results) {
+            for (LynnApiService.LynnLandmark houtu : results) {
                 String formattedText = String.format(
                     ToriiFind.translate("toriifind.result.format.entry").getString(),
-                    houtu.id, houtu.level, houtu.name
+                    houtu.getId(), houtu.getGrade(), houtu.getName()
                 );
                 MutableText baseText = Text.literal(formattedText + " ");
-                String wikiUrl = "https://wiki.ria.red/wiki/" + houtu.name;
+                String wikiUrl = "https://wiki.ria.red/wiki/" + houtu.getName();
             
                 Style linkStyle = Style.EMPTY
                     .withClickEvent(new ClickEvent.OpenUrl(URI.create(wikiUrl)))
@@ -942,104 +1066,29 @@ public class ToriiFindCommand {
                     ToriiFind.translate("toriifind.result.wiki_link").getString()
                 ).setStyle(linkStyle);
             
-                context.getSource().sendFeedback(baseText.append(linkText));
+                lines.add(baseText.append(linkText));
             }            
-            context.getSource().sendFeedback(ToriiFind.translate("toriifind.divider"));
+            lines.add(ToriiFind.translate("toriifind.divider"));
         }
+        return lines;
     }
 
     /**
-     * 加载零洲数据（优先使用本地文件）
-     * @return 零洲鸟居列表
+     * 加载零洲数据索引（优先使用本地文件，解析结果和拼音由快照缓存复用）
+     * @return 零洲鸟居索引
      * @throws IOException 读取异常
      */
-    private static List<Torii> loadZerothData() throws IOException {
-        // 判断当前数据源是否为 local
-        String currentSource = ToriiFind.getCurrentSourceName();
-        if ("local".equals(currentSource)) {
-            Path configDir = net.fabricmc.loader.api.FabricLoader.getInstance().getConfigDir();
-            Path configFile = configDir.resolve("toriifind.json");
-            return loadZerothDataFromFile(configFile);
-        }
-        // 其它数据源逻辑不变
-        Path localFile = com.fletime.toriifind.service.LocalDataService.getLocalDataFile(currentSource);
-        if (java.nio.file.Files.exists(localFile)) {
-            try {
-                return loadZerothDataFromFile(localFile);
-            } catch (Exception e) {
-                System.err.println("[ToriiFind] 读取本地零洲数据失败，尝试从传统配置文件读取: " + e.getMessage());
-            }
-        }
-        Path configDir = net.fabricmc.loader.api.FabricLoader.getInstance().getConfigDir();
-        Path configFile = configDir.resolve("toriifind.json");
-        return loadZerothDataFromFile(configFile);
-    }
-    
-    /**
-     * 从指定文件加载零洲数据
-     */
-    private static List<Torii> loadZerothDataFromFile(Path file) throws IOException {
-        List<Torii> toriiList = new ArrayList<>();
-        try (Reader reader = Files.newBufferedReader(file)) {
-            JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
-            JsonArray zerothArray = jsonObject.getAsJsonArray("zeroth");
-            for (int i = 0; i < zerothArray.size(); i++) {
-                JsonObject toriiObject = zerothArray.get(i).getAsJsonObject();
-                String id = toriiObject.get("id").getAsString();
-                String name = toriiObject.get("name").getAsString();
-                String level = toriiObject.get("grade").getAsString();
-                Torii torii = new Torii(id, name, level);
-                toriiList.add(torii);
-            }
-        }
-        return toriiList;
+    private static LandmarkIndex loadZerothIndex() throws IOException {
+        return LandmarkSnapshotService.getSnapshotForSource(ToriiFind.getCurrentSourceName()).getZerothIndex();
     }
 
     /**
-     * 加载后土数据（优先使用本地文件）
-     * @return 后土境地列表
+     * 加载后土数据索引（优先使用本地文件，解析结果和拼音由快照缓存复用）
+     * @return 后土境地索引
      * @throws IOException 读取异常
      */
-    private static List<Houtu> loadHoutuData() throws IOException {
-        // 判断当前数据源是否为 local
-        String currentSource = ToriiFind.getCurrentSourceName();
-        if ("local".equals(currentSource)) {
-            Path configDir = net.fabricmc.loader.api.FabricLoader.getInstance().getConfigDir();
-            Path configFile = configDir.resolve("toriifind.json");
-            return loadHoutuDataFromFile(configFile);
-        }
-        // 其它数据源逻辑不变
-        Path localFile = com.fletime.toriifind.service.LocalDataService.getLocalDataFile(currentSource);
-        if (java.nio.file.Files.exists(localFile)) {
-            try {
-                return loadHoutuDataFromFile(localFile);
-            } catch (Exception e) {
-                System.err.println("[ToriiFind] 读取本地后土数据失败，尝试从传统配置文件读取: " + e.getMessage());
-            }
-        }
-        Path configDir = net.fabricmc.loader.api.FabricLoader.getInstance().getConfigDir();
-        Path configFile = configDir.resolve("toriifind.json");
-        return loadHoutuDataFromFile(configFile);
-    }
-    
-    /**
-     * 从指定文件加载后土数据
-     */
-    private static List<Houtu> loadHoutuDataFromFile(Path file) throws IOException {
-        List<Houtu> houtuList = new ArrayList<>();
-        try (Reader reader = Files.newBufferedReader(file)) {
-            JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
-            JsonArray houtuArray = jsonObject.getAsJsonArray("houtu");
-            for (int i = 0; i < houtuArray.size(); i++) {
-                JsonObject houtuObject = houtuArray.get(i).getAsJsonObject();
-                String id = houtuObject.get("id").getAsString();
-                String name = houtuObject.get("name").getAsString();
-                String level = houtuObject.get("grade").getAsString();
-                Houtu houtu = new Houtu(id, name, level);
-                houtuList.add(houtu);
-            }
-        }
-        return houtuList;
+    private static LandmarkIndex loadHoutuIndex() throws IOException {
+        return LandmarkSnapshotService.getSnapshotForSource(ToriiFind.getCurrentSourceName()).getHoutuIndex();
     }
 
     /**
@@ -6,6 +6,7 @@ import org.yaml.snakeyaml.representer.Representer;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.LoaderOptions;
 import net.fabricmc.loader.api.FabricLoader;
+import com.fletime.toriifind.service.StartupTimelineService;
 
 import java.io.FileInputStream;
 import java.io.FileWriter;
@@ -19,6 +20,16 @@ public class SourceConfig {
     private Map<String, DataSource> sources = new HashMap<>();
     private String currentSource = "fletime";
     private int version = 1;
+    private boolean rankedSearch = false;   // 智能查询是否使用排序容错搜索
+    private int maxResults = 20;            // 排序搜索最多显示的结果数
+    private int hedgeDelayMs = 1500;        // 下载时当前地址多久没有返回数据就同时请求下一个镜像（毫秒）
+    private int apiCacheTtlSeconds = 60;    // API 查询结果缓存有效期（秒），0 表示不缓存
+    private int apiCacheMaxStaleSeconds = 600; // 过期后仍可先返回旧结果并后台刷新的时间（秒）
+    private int apiCacheMaxEntries = 256;   // API 查询结果缓存的最大条目数
+    private int replicaSyncMinutes = 30;    // API 数据源离线副本的后台同步间隔（分钟）
+    private int frameBudgetMs = 4;          // 每个客户端 tick 中本 Mod 在主线程上最多占用的时间（毫秒）
+    private int downloadConcurrency = 3;    // 启动时同时下载的数据源数
+    private int downloadTimeoutSeconds = 120; // 启动时单个数据源的下载期限（秒），0 表示不限制
     
     public static class DataSource {
         private String name;
@@ -28,6 +39,7 @@ public class SourceConfig {
         private String apiBaseUrl;
         private String[] mirrorUrls;
         private String version;
+        private boolean offlineReplica = false;  // API 模式下是否在本地保存完整数据副本
         
         public enum SourceType {
             JSON,    // 传统JSON文件模式
@@ -90,6 +102,9 @@ public class SourceConfig {
         public String getVersion() { return version; }
         public void setVersion(String version) { this.version = version; }
         
+        public boolean isOfflineReplica() { return offlineReplica; }
+        public void setOfflineReplica(boolean offlineReplica) { this.offlineReplica = offlineReplica; }
+        
         public boolean isApiMode() { return type == SourceType.API; }
         
         public String[] getAllUrls() {
@@ -112,6 +127,36 @@ public class SourceConfig {
     public int getVersion() { return version; }
     public void setVersion(int version) { this.version = version; }
     
+    public boolean isRankedSearch() { return rankedSearch; }
+    public void setRankedSearch(boolean rankedSearch) { this.rankedSearch = rankedSearch; }
+    
+    public int getMaxResults() { return maxResults; }
+    public void setMaxResults(int maxResults) { this.maxResults = maxResults; }
+    
+    public int getHedgeDelayMs() { return hedgeDelayMs; }
+    public void setHedgeDelayMs(int hedgeDelayMs) { this.hedgeDelayMs = hedgeDelayMs; }
+    
+    public int getApiCacheTtlSeconds() { return apiCacheTtlSeconds; }
+    public void setApiCacheTtlSeconds(int apiCacheTtlSeconds) { this.apiCacheTtlSeconds = apiCacheTtlSeconds; }
+    
+    public int getApiCacheMaxStaleSeconds() { return apiCacheMaxStaleSeconds; }
+    public void setApiCacheMaxStaleSeconds(int apiCacheMaxStaleSeconds) { this.apiCacheMaxStaleSeconds = apiCacheMaxStaleSeconds; }
+    
+    public int getApiCacheMaxEntries() { return apiCacheMaxEntries; }
+    public void setApiCacheMaxEntries(int apiCacheMaxEntries) { this.apiCacheMaxEntries = apiCacheMaxEntries; }
+    
+    public int getReplicaSyncMinutes() { return replicaSyncMinutes; }
+    public void setReplicaSyncMinutes(int replicaSyncMinutes) { this.replicaSyncMinutes = replicaSyncMinutes; }
+    
+    public int getFrameBudgetMs() { return frameBudgetMs; }
+    public void setFrameBudgetMs(int frameBudgetMs) { this.frameBudgetMs = frameBudgetMs; }
+    
+    public int getDownloadConcurrency() { return downloadConcurrency; }
+    public void setDownloadConcurrency(int downloadConcurrency) { this.downloadConcurrency = downloadConcurrency; }
+    
+    public int getDownloadTimeoutSeconds() { return downloadTimeoutSeconds; }
+    public void setDownloadTimeoutSeconds(int downloadTimeoutSeconds) { this.downloadTimeoutSeconds = downloadTimeoutSeconds; }
+    
     public DataSource getCurrentDataSource() {
         return sources.get(currentSource);
     }
@@ -133,14 +178,21 @@ public class SourceConfig {
         }
         
         try {
-            LoaderOptions loaderOptions = new LoaderOptions();
-            Constructor constructor = new Constructor(SourceConfig.class, loaderOptions);
-            Yaml yaml = new Yaml(constructor);
-            // 使用 UTF-8 编码读取文件
-            try (java.io.InputStreamReader reader = new java.io.InputStreamReader(
-                    new FileInputStream(configFile.toFile()), 
-                    java.nio.charset.StandardCharsets.UTF_8)) {
-                SourceConfig config = yaml.load(reader);
+            // 先读取再解析，启动时间线分别记录两个阶段
+            StartupTimelineService.Phase readPhase = StartupTimelineService.begin("config.read");
+            String content;
+            try {
+                // 使用 UTF-8 编码读取文件
+                content = Files.readString(configFile, java.nio.charset.StandardCharsets.UTF_8);
+            } finally {
+                readPhase.end();
+            }
+            StartupTimelineService.Phase parsePhase = StartupTimelineService.begin("config.parse");
+            try {
+                LoaderOptions loaderOptions = new LoaderOptions();
+                Constructor constructor = new Constructor(SourceConfig.class, loaderOptions);
+                Yaml yaml = new Yaml(constructor);
+                SourceConfig config = yaml.load(content);
                 if (config == null) {
                     // 文件存在但为空，创建备份后重新创建
                     backupConfigFile();
@@ -158,6 +210,8 @@ public class SourceConfig {
                 addMissingDefaultSources(config);
                 
                 return config;
+            } finally {
+                parsePhase.end();
             }
         } catch (Exception e) {
             // 解析失败，创建备份后重新创建
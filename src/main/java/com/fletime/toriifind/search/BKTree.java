@@ -0,0 +1,142 @@
+package com.fletime.toriifind.search;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基于编辑距离（Levenshtein）的 BK 树，用于容错查询。
+ * 查询时利用三角不等式只访问距离区间内的子树，不需要和每个词计算编辑距离。
+ */
+public final class BKTree {
+    private Node root;
+    private int size;
+
+    private static final class Node {
+        private final String term;
+        private int[] ordinals;
+        private Map<Integer, Node> children;
+
+        private Node(String term, int ordinal) {
+            this.term = term;
+            this.ordinals = new int[]{ordinal};
+        }
+
+        private void addOrdinal(int ordinal) {
+            ordinals = Arrays.copyOf(ordinals, ordinals.length + 1);
+            ordinals[ordinals.length - 1] = ordinal;
+        }
+    }
+
+    /**
+     * 构建 BK 树
+     * @param terms 每个地标对应的词，下标即地标序号；null 或空字符串会被忽略
+     */
+    public static BKTree build(String[] terms) {
+        BKTree tree = new BKTree();
+        for (int i = 0; i < terms.length; i++) {
+            if (terms[i] != null && !terms[i].isEmpty()) {
+                tree.add(terms[i], i);
+            }
+        }
+        return tree;
+    }
+
+    private void add(String term, int ordinal) {
+        size++;
+        if (root == null) {
+            root = new Node(term, ordinal);
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(term, node.term, Integer.MAX_VALUE);
+            if (distance == 0) {
+                node.addOrdinal(ordinal);
+                return;
+            }
+            if (node.children == null) {
+                node.children = new HashMap<>(4);
+            }
+            Node child = node.children.get(distance);
+            if (child == null) {
+                node.children.put(distance, new Node(term, ordinal));
+                return;
+            }
+            node = child;
+        }
+    }
+
+    public int size() { return size; }
+
+    /**
+     * 查询结果回调
+     */
+    public interface Visitor {
+        void accept(int ordinal, int distance);
+    }
+
+    /**
+     * 查找与 query 编辑距离不超过 maxDistance 的所有词
+     * @param visitor 接收地标序号和编辑距离
+     */
+    public void search(String query, int maxDistance, Visitor visitor) {
+        if (root == null) {
+            return;
+        }
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            int distance = distance(query, node.term, Integer.MAX_VALUE);
+            if (distance <= maxDistance) {
+                for (int ordinal : node.ordinals) {
+                    visitor.accept(ordinal, distance);
+                }
+            }
+            if (node.children != null) {
+                int low = distance - maxDistance;
+                int high = distance + maxDistance;
+                for (Map.Entry<Integer, Node> entry : node.children.entrySet()) {
+                    int key = entry.getKey();
+                    if (key >= low && key <= high) {
+                        stack.push(entry.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 计算编辑距离，超过 limit 时提前返回 limit + 1
+     */
+    public static int distance(String a, String b, int limit) {
+        if (Math.abs(a.length() - b.length()) > limit) {
+            return limit + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
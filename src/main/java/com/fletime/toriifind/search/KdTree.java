@@ -0,0 +1,240 @@
+package com.fletime.toriifind.search;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * x/z 平面上的二维 k-d 树，用于最近地标查询。
+ * 以数组隐式存储：区间 [lo, hi) 的中点即为该子树的根，奇偶层分别按 x、z 切分。
+ */
+public final class KdTree {
+    private final int[] ordinals;
+    private final double[] xs;
+    private final double[] zs;
+
+    private KdTree(int[] ordinals, double[] xs, double[] zs) {
+        this.ordinals = ordinals;
+        this.xs = xs;
+        this.zs = zs;
+    }
+
+    /**
+     * 构建 k-d 树
+     * @param xs 每个地标的 x 坐标，下标即地标序号
+     * @param zs 每个地标的 z 坐标，下标即地标序号
+     * @param excluded 需要排除的序号（坐标未知），可为 null
+     */
+    public static KdTree build(double[] xs, double[] zs, BitSet excluded) {
+        int count = 0;
+        int[] ordinals = new int[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            if (excluded == null || !excluded.get(i)) {
+                ordinals[count++] = i;
+            }
+        }
+        ordinals = Arrays.copyOf(ordinals, count);
+        double[] px = new double[count];
+        double[] pz = new double[count];
+        for (int i = 0; i < count; i++) {
+            px[i] = xs[ordinals[i]];
+            pz[i] = zs[ordinals[i]];
+        }
+        KdTree tree = new KdTree(ordinals, px, pz);
+        tree.buildRange(0, count, 0);
+        return tree;
+    }
+
+    private void buildRange(int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, (depth & 1) == 0 ? xs : zs);
+        buildRange(lo, mid, depth + 1);
+        buildRange(mid + 1, hi, depth + 1);
+    }
+
+    /**
+     * 快速选择：使下标 k 处为 [left, right] 区间按 axis 排序后的元素。
+     * 三路切分（小于 / 等于 / 大于基准），大量坐标相同时（例如整齐排列的地标）仍为线性时间
+     */
+    private void select(int left, int right, int k, double[] axis) {
+        while (right > left) {
+            double pivotValue = medianOfThree(axis[left], axis[(left + right) >>> 1], axis[right]);
+            // 切分后 [left, lt) 小于基准，[lt, gt] 等于基准，(gt, right] 大于基准
+            int lt = left;
+            int gt = right;
+            int i = left;
+            while (i <= gt) {
+                double value = axis[i];
+                if (value < pivotValue) {
+                    swap(lt++, i++);
+                } else if (value > pivotValue) {
+                    swap(i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            if (k < lt) {
+                right = lt - 1;
+            } else if (k > gt) {
+                left = gt + 1;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static double medianOfThree(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private void swap(int i, int j) {
+        int ordinal = ordinals[i];
+        ordinals[i] = ordinals[j];
+        ordinals[j] = ordinal;
+        double x = xs[i];
+        xs[i] = xs[j];
+        xs[j] = x;
+        double z = zs[i];
+        zs[i] = zs[j];
+        zs[j] = z;
+    }
+
+    /**
+     * 查找距离指定位置最近的地标
+     * @param x 查询位置 x
+     * @param z 查询位置 z
+     * @param radius 最大水平距离，小于等于 0 表示不限制
+     * @param limit 最多返回的数量
+     * @return 按距离从近到远排列的地标序号（距离相同时序号小的在前）
+     */
+    public int[] nearest(double x, double z, double radius, int limit) {
+        if (limit <= 0 || ordinals.length == 0) {
+            return new int[0];
+        }
+        Heap heap = new Heap(Math.min(limit, ordinals.length),
+            radius > 0 ? radius * radius : Double.POSITIVE_INFINITY);
+        search(0, ordinals.length, 0, x, z, heap);
+        return heap.drainSorted();
+    }
+
+    private void search(int lo, int hi, int depth, double x, double z, Heap heap) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double dx = xs[mid] - x;
+        double dz = zs[mid] - z;
+        heap.offer(dx * dx + dz * dz, ordinals[mid]);
+
+        double delta = (depth & 1) == 0 ? x - xs[mid] : z - zs[mid];
+        // 先进入查询点所在的一侧，另一侧只有在切分线距离小于当前最远候选时才需要访问
+        if (delta < 0) {
+            search(lo, mid, depth + 1, x, z, heap);
+            if (delta * delta <= heap.bound()) {
+                search(mid + 1, hi, depth + 1, x, z, heap);
+            }
+        } else {
+            search(mid + 1, hi, depth + 1, x, z, heap);
+            if (delta * delta <= heap.bound()) {
+                search(lo, mid, depth + 1, x, z, heap);
+            }
+        }
+    }
+
+    public int size() { return ordinals.length; }
+
+    /**
+     * 定长大顶堆，堆顶是当前候选中最远的一个
+     */
+    private static final class Heap {
+        private final double[] distances;
+        private final int[] ordinals;
+        private final double maxDistance;
+        private int size;
+
+        private Heap(int capacity, double maxDistance) {
+            this.distances = new double[capacity];
+            this.ordinals = new int[capacity];
+            this.maxDistance = maxDistance;
+        }
+
+        /**
+         * 当前需要比较的距离上界（平方）
+         */
+        private double bound() {
+            return size < distances.length ? maxDistance : distances[0];
+        }
+
+        private void offer(double distance, int ordinal) {
+            if (distance > maxDistance) {
+                return;
+            }
+            if (size < distances.length) {
+                distances[size] = distance;
+                ordinals[size] = ordinal;
+                siftUp(size++);
+            } else if (farther(distances[0], ordinals[0], distance, ordinal)) {
+                distances[0] = distance;
+                ordinals[0] = ordinal;
+                siftDown(0);
+            }
+        }
+
+        private int[] drainSorted() {
+            int[] result = new int[size];
+            for (int i = size - 1; i >= 0; i--) {
+                result[i] = ordinals[0];
+                size--;
+                distances[0] = distances[size];
+                ordinals[0] = ordinals[size];
+                siftDown(0);
+            }
+            return result;
+        }
+
+        private static boolean farther(double d1, int o1, double d2, int o2) {
+            return d1 > d2 || (d1 == d2 && o1 > o2);
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!farther(distances[index], ordinals[index], distances[parent], ordinals[parent])) {
+                    return;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int left = index * 2 + 1;
+                if (left >= size) {
+                    return;
+                }
+                int largest = left;
+                int right = left + 1;
+                if (right < size && farther(distances[right], ordinals[right], distances[left], ordinals[left])) {
+                    largest = right;
+                }
+                if (!farther(distances[largest], ordinals[largest], distances[index], ordinals[index])) {
+                    return;
+                }
+                swap(index, largest);
+                index = largest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            double distance = distances[i];
+            distances[i] = distances[j];
+            distances[j] = distance;
+            int ordinal = ordinals[i];
+            ordinals[i] = ordinals[j];
+            ordinals[j] = ordinal;
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package com.fletime.toriifind.search;
+
+import com.fletime.toriifind.service.LynnApiService.LynnLandmark;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * 单个地区（零洲或后土）的地标搜索索引。
+ * 拼音、首字母和 n-gram 倒排表在快照加载时一次性构建，查询时不再逐个扫描地标。
+ */
+public final class LandmarkIndex {
+    private static final int FLAG_UNKNOWN_COORDINATES = 1;
+
+    private final List<LynnLandmark> landmarks;
+    // 以空格分隔音节的完整拼音，例如 "xue yu shen she"
+    private final String[] pinyin;
+    // 紧凑小写拼音，例如 "xueyushenshe"，用于匹配
+    private final String[] compactPinyin;
+    // 拼音首字母，例如 "xyss"
+    private final String[] initials;
+    private final PrefixIndex initialsIndex;
+    private final NGramIndex idGrams;
+    private final NGramIndex nameGrams;
+    private final NGramIndex pinyinGrams;
+    // 坐标列，按地标序号存放；坐标未知的序号记录在位图中
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+    private final BitSet unknownCoordinates;
+    // 容错查询用的 BK 树，仅在第一次排序查询时构建
+    private volatile BKTree nameTree;
+    private volatile BKTree pinyinTree;
+    // 最近地标查询用的 k-d 树，仅在第一次附近查询时构建
+    private volatile KdTree spatialTree;
+    // 输入补全用的前缀索引（编号、小写名称、紧凑拼音、拼音首字母），仅在第一次补全时构建
+    private volatile PrefixIndex[] suggestionIndexes;
+
+    private LandmarkIndex(List<LynnLandmark> landmarks, String[] pinyin, String[] compactPinyin, String[] initials,
+                          PrefixIndex initialsIndex, NGramIndex idGrams, NGramIndex nameGrams, NGramIndex pinyinGrams) {
+        this.landmarks = landmarks;
+        this.pinyin = pinyin;
+        this.compactPinyin = compactPinyin;
+        this.initials = initials;
+        this.initialsIndex = initialsIndex;
+        this.idGrams = idGrams;
+        this.nameGrams = nameGrams;
+        this.pinyinGrams = pinyinGrams;
+
+        int count = landmarks.size();
+        this.xs = new double[count];
+        this.ys = new double[count];
+        this.zs = new double[count];
+        this.unknownCoordinates = new BitSet(count);
+        for (int i = 0; i < count; i++) {
+            LynnLandmark.Coordinates coordinates = landmarks.get(i).getCoordinates();
+            if (coordinates == null || coordinates.isUnknown()) {
+                unknownCoordinates.set(i);
+            } else {
+                xs[i] = coordinates.getX();
+                ys[i] = coordinates.getY();
+                zs[i] = coordinates.getZ();
+            }
+        }
+    }
+
+    /**
+     * 由地标和已计算的拼音构建首字母和 n-gram 索引
+     */
+    private static LandmarkIndex create(List<LynnLandmark> landmarks, String[] pinyin, String[] compactPinyin) {
+        String[] initials = new String[pinyin.length];
+        for (int i = 0; i < pinyin.length; i++) {
+            initials[i] = PinyinConverter.initialsOf(pinyin[i]);
+        }
+
+        String[] ids = new String[landmarks.size()];
+        String[] names = new String[landmarks.size()];
+        for (int i = 0; i < landmarks.size(); i++) {
+            ids[i] = landmarks.get(i).getId();
+            names[i] = landmarks.get(i).getName();
+        }
+        return new LandmarkIndex(landmarks, pinyin, compactPinyin, initials, PrefixIndex.build(initials),
+            NGramIndex.build(ids), NGramIndex.build(names), NGramIndex.build(compactPinyin));
+    }
+
+    /**
+     * 为地标列表构建索引
+     */
+    public static LandmarkIndex build(List<LynnLandmark> landmarks) {
+        List<LynnLandmark> copy = Collections.unmodifiableList(new ArrayList<>(landmarks));
+        String[] pinyin = new String[copy.size()];
+        String[] compactPinyin = new String[copy.size()];
+        for (int i = 0; i < copy.size(); i++) {
+            String name = copy.get(i).getName();
+            pinyin[i] = PinyinConverter.toSyllables(name);
+            compactPinyin[i] = PinyinConverter.toPinyin(name).toLowerCase();
+        }
+        return create(copy, pinyin, compactPinyin);
+    }
+
+    /**
+     * 合并两个索引（复用已计算的拼音）
+     */
+    public static LandmarkIndex concat(LandmarkIndex first, LandmarkIndex second) {
+        List<LynnLandmark> combined = new ArrayList<>(first.size() + second.size());
+        combined.addAll(first.landmarks);
+        combined.addAll(second.landmarks);
+        String[] pinyin = new String[combined.size()];
+        String[] compactPinyin = new String[combined.size()];
+        System.arraycopy(first.pinyin, 0, pinyin, 0, first.size());
+        System.arraycopy(second.pinyin, 0, pinyin, first.size(), second.size());
+        System.arraycopy(first.compactPinyin, 0, compactPinyin, 0, first.size());
+        System.arraycopy(second.compactPinyin, 0, compactPinyin, first.size(), second.size());
+        return create(Collections.unmodifiableList(combined), pinyin, compactPinyin);
+    }
+
+    /**
+     * 遍历索引中需要写入字符串表的所有字符串
+     */
+    public void collectStrings(Consumer<String> sink) {
+        for (int i = 0; i < landmarks.size(); i++) {
+            LynnLandmark landmark = landmarks.get(i);
+            sink.accept(landmark.getId());
+            sink.accept(landmark.getName());
+            sink.accept(landmark.getGrade());
+            sink.accept(landmark.getStatus());
+            sink.accept(pinyin[i]);
+            sink.accept(compactPinyin[i]);
+            sink.accept(initials[i]);
+        }
+    }
+
+    /**
+     * 写入二进制快照：定长地标记录（字符串以字符串表下标表示，坐标为数值），随后是预先构建的索引
+     * @param stringRefs 字符串到字符串表下标的映射
+     */
+    public void writeTo(DataOutputStream out, ToIntFunction<String> stringRefs) throws IOException {
+        out.writeInt(landmarks.size());
+        for (int i = 0; i < landmarks.size(); i++) {
+            LynnLandmark landmark = landmarks.get(i);
+            out.writeInt(stringRefs.applyAsInt(landmark.getId()));
+            out.writeInt(stringRefs.applyAsInt(landmark.getName()));
+            out.writeInt(stringRefs.applyAsInt(landmark.getGrade()));
+            out.writeInt(stringRefs.applyAsInt(landmark.getStatus()));
+            out.writeInt(stringRefs.applyAsInt(pinyin[i]));
+            out.writeInt(stringRefs.applyAsInt(compactPinyin[i]));
+            out.writeInt(stringRefs.applyAsInt(initials[i]));
+
+            out.writeByte(unknownCoordinates.get(i) ? FLAG_UNKNOWN_COORDINATES : 0);
+            out.writeDouble(xs[i]);
+            out.writeDouble(ys[i]);
+            out.writeDouble(zs[i]);
+        }
+        initialsIndex.writeTo(out);
+        idGrams.writeTo(out);
+        nameGrams.writeTo(out);
+        pinyinGrams.writeTo(out);
+    }
+
+    /**
+     * 从二进制快照读取索引（不调用 pinyin4j，也不重新构建倒排表）
+     * @param strings 字符串表
+     */
+    public static LandmarkIndex readFrom(ByteBuffer buffer, IntFunction<String> strings) {
+        int count = buffer.getInt();
+        List<LynnLandmark> landmarks = new ArrayList<>(count);
+        String[] ids = new String[count];
+        String[] names = new String[count];
+        String[] pinyin = new String[count];
+        String[] compactPinyin = new String[count];
+        String[] initials = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = strings.apply(buffer.getInt());
+            names[i] = strings.apply(buffer.getInt());
+            String grade = strings.apply(buffer.getInt());
+            String status = strings.apply(buffer.getInt());
+            pinyin[i] = strings.apply(buffer.getInt());
+            compactPinyin[i] = strings.apply(buffer.getInt());
+            initials[i] = strings.apply(buffer.getInt());
+
+            byte flags = buffer.get();
+            double x = buffer.getDouble();
+            double y = buffer.getDouble();
+            double z = buffer.getDouble();
+            LynnLandmark.Coordinates coordinates = (flags & FLAG_UNKNOWN_COORDINATES) != 0
+                ? LynnLandmark.Coordinates.UNKNOWN
+                : new LynnLandmark.Coordinates(x, y, z);
+            landmarks.add(new LynnLandmark(ids[i], names[i], grade, status, coordinates));
+        }
+        PrefixIndex initialsIndex = PrefixIndex.readFrom(buffer, initials);
+        NGramIndex idGrams = NGramIndex.readFrom(buffer, ids);
+        NGramIndex nameGrams = NGramIndex.readFrom(buffer, names);
+        NGramIndex pinyinGrams = NGramIndex.readFrom(buffer, compactPinyin);
+        return new LandmarkIndex(Collections.unmodifiableList(landmarks), pinyin, compactPinyin, initials,
+            initialsIndex, idGrams, nameGrams, pinyinGrams);
+    }
+
+
+    public int size() { return landmarks.size(); }
+    public LynnLandmark get(int ordinal) { return landmarks.get(ordinal); }
+    public List<LynnLandmark> getLandmarks() { return landmarks; }
+    public String getPinyin(int ordinal) { return pinyin[ordinal]; }
+    public String getCompactPinyin(int ordinal) { return compactPinyin[ordinal]; }
+    public String getInitials(int ordinal) { return initials[ordinal]; }
+    public boolean hasCoordinates(int ordinal) { return !unknownCoordinates.get(ordinal); }
+    public double getX(int ordinal) { return xs[ordinal]; }
+    public double getY(int ordinal) { return ys[ordinal]; }
+    public double getZ(int ordinal) { return zs[ordinal]; }
+
+    /**
+     * 计算地标到指定位置的水平距离平方（x/z 平面），坐标未知时返回正无穷
+     */
+    public double horizontalDistanceSquared(int ordinal, double x, double z) {
+        if (unknownCoordinates.get(ordinal)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double dx = xs[ordinal] - x;
+        double dz = zs[ordinal] - z;
+        return dx * dx + dz * dz;
+    }
+
+    /**
+     * 按拼音首字母前缀查找，例如 "xyss" 可以匹配 "鳕鱼神社"
+     * @return 按文件顺序排列的结果
+     */
+    public List<LynnLandmark> searchByInitials(String prefix) {
+        return toLandmarks(initialsIndex.findByPrefix(prefix.toLowerCase()));
+    }
+
+    /**
+     * 按名称或拼音搜索：先按名称包含匹配，没有结果且关键字全为字母时再按完整拼音或拼音首字母匹配
+     */
+    public List<LynnLandmark> searchByNameOrPinyin(String keyword) {
+        int[] matched = nameGrams.findContaining(keyword);
+        if (matched.length == 0 && isLetters(keyword)) {
+            String lowercaseKeyword = keyword.toLowerCase();
+            matched = NGramIndex.union(pinyinGrams.findContaining(lowercaseKeyword), initialsIndex.findByPrefix(lowercaseKeyword));
+        }
+        return toLandmarks(matched);
+    }
+
+    /**
+     * 按编号搜索
+     * @param idKeyword 编号关键字
+     * @param exact true 为精确匹配，false 为包含匹配
+     */
+    public List<LynnLandmark> searchById(String idKeyword, boolean exact) {
+        List<LynnLandmark> results = new ArrayList<>();
+        for (int ordinal : idGrams.findContaining(idKeyword)) {
+            LynnLandmark landmark = landmarks.get(ordinal);
+            if (!exact || landmark.getId().equals(idKeyword)) {
+                results.add(landmark);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 智能搜索：按编号和名称（包括拼音）都查找，合并后按编号去重
+     * @param query 查询内容
+     * @param exactId 编号是否精确匹配
+     */
+    public List<LynnLandmark> searchSmart(String query, boolean exactId) {
+        List<LynnLandmark> results = searchById(query, exactId);
+        Set<String> seenIds = new HashSet<>();
+        for (LynnLandmark landmark : results) {
+            seenIds.add(landmark.getId());
+        }
+        int[] matched = NGramIndex.union(nameGrams.findContaining(query), pinyinGrams.findContaining(query.toLowerCase()));
+        for (int ordinal : matched) {
+            LynnLandmark landmark = landmarks.get(ordinal);
+            if (seenIds.add(landmark.getId())) {
+                results.add(landmark);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 排序查询：综合编号、名称前缀、子串、拼音、首字母和编辑距离打分，只返回得分最高的 limit 个结果
+     * @param query 查询内容
+     * @param limit 最多返回的结果数
+     */
+    public List<LynnLandmark> searchRanked(String query, int limit) {
+        if (query.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        String lowercaseQuery = query.toLowerCase();
+        Map<Integer, Integer> scores = new HashMap<>();
+
+        for (int ordinal : idGrams.findContaining(query)) {
+            String id = landmarks.get(ordinal).getId();
+            offerScore(scores, ordinal, id.equals(query) ? 1000 : id.startsWith(query) ? 850 : 700);
+        }
+        for (int ordinal : nameGrams.findContaining(query)) {
+            String name = landmarks.get(ordinal).getName();
+            offerScore(scores, ordinal, name.equals(query) ? 950 : name.startsWith(query) ? 800 : 650);
+        }
+        for (int ordinal : pinyinGrams.findContaining(lowercaseQuery)) {
+            offerScore(scores, ordinal, compactPinyin[ordinal].startsWith(lowercaseQuery) ? 600 : 500);
+        }
+        for (int ordinal : initialsIndex.findByPrefix(lowercaseQuery)) {
+            offerScore(scores, ordinal, initials[ordinal].equals(lowercaseQuery) ? 580 : 550);
+        }
+
+        // 编辑距离容错：越长的查询允许越多的错误
+        int maxDistance = lowercaseQuery.length() <= 3 ? 0 : lowercaseQuery.length() <= 6 ? 1 : 2;
+        if (maxDistance > 0) {
+            getPinyinTree().search(lowercaseQuery, maxDistance, (ordinal, distance) ->
+                offerScore(scores, ordinal, 400 - distance * 100));
+            getNameTree().search(lowercaseQuery, maxDistance, (ordinal, distance) ->
+                offerScore(scores, ordinal, 400 - distance * 100));
+        }
+
+        // 用大小为 limit 的小顶堆保留得分最高的结果
+        Comparator<Integer> ranking = Comparator
+            .<Integer>comparingInt(scores::get)
+            .thenComparing(Comparator.<Integer>comparingInt(ordinal -> landmarks.get(ordinal).getName().length()).reversed())
+            .thenComparing(Comparator.<Integer>naturalOrder().reversed());
+        PriorityQueue<Integer> heap = new PriorityQueue<>(Math.min(limit, scores.size()) + 1, ranking);
+        for (Integer ordinal : scores.keySet()) {
+            heap.offer(ordinal);
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+
+        LynnLandmark[] ranked = new LynnLandmark[heap.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = landmarks.get(heap.poll());
+        }
+        return new ArrayList<>(Arrays.asList(ranked));
+    }
+
+    private static void offerScore(Map<Integer, Integer> scores, int ordinal, int score) {
+        scores.merge(ordinal, score, Math::max);
+    }
+
+    private BKTree getNameTree() {
+        BKTree tree = nameTree;
+        if (tree == null) {
+            synchronized (this) {
+                tree = nameTree;
+                if (tree == null) {
+                    String[] names = new String[landmarks.size()];
+                    for (int i = 0; i < names.length; i++) {
+                        names[i] = landmarks.get(i).getName().toLowerCase();
+                    }
+                    tree = BKTree.build(names);
+                    nameTree = tree;
+                }
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * 查找离指定位置最近的地标（按 x/z 水平距离），坐标未知的地标不参与
+     * @param x 查询位置 x
+     * @param z 查询位置 z
+     * @param radius 最大水平距离，小于等于 0 表示不限制
+     * @param limit 最多返回的数量
+     * @return 按距离从近到远排列的地标序号
+     */
+    public int[] searchNearest(double x, double z, double radius, int limit) {
+        return getSpatialTree().nearest(x, z, radius, limit);
+    }
+
+    /**
+     * 输入补全：依次按编号前缀、名称前缀、拼音前缀和拼音首字母前缀查找，去重后最多返回 limit 个结果。
+     * 每次只在有序键上二分定位后顺序读取，超过 deadline 时直接返回已找到的结果
+     * @param prefix 已输入的内容
+     * @param limit 最多返回的数量
+     * @param deadline 截止时间（{@link System#nanoTime()}）
+     * @return 地标序号，编号匹配在前
+     */
+    public int[] suggest(String prefix, int limit, long deadline) {
+        if (prefix.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+        PrefixIndex[] indexes = getSuggestionIndexes();
+        String lowercasePrefix = prefix.toLowerCase(Locale.ROOT);
+        int[] result = new int[limit];
+        int count = 0;
+        int scanned = 0;
+        BitSet seen = new BitSet(size());
+        for (int i = 0; i < indexes.length && count < limit; i++) {
+            PrefixIndex index = indexes[i];
+            String key = i == 0 ? prefix : lowercasePrefix;
+            for (int position = index.lowerBound(key); position < index.size() && count < limit; position++) {
+                if (!index.getKey(position).startsWith(key)) {
+                    break;
+                }
+                if ((++scanned & 31) == 0 && System.nanoTime() > deadline) {
+                    return Arrays.copyOf(result, count);
+                }
+                int ordinal = index.getOrdinal(position);
+                if (!seen.get(ordinal)) {
+                    seen.set(ordinal);
+                    result[count++] = ordinal;
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * 预先构建输入补全用的前缀索引
+     */
+    public void prepareSuggestions() {
+        getSuggestionIndexes();
+    }
+
+    private PrefixIndex[] getSuggestionIndexes() {
+        PrefixIndex[] indexes = suggestionIndexes;
+        if (indexes == null) {
+            synchronized (this) {
+                indexes = suggestionIndexes;
+                if (indexes == null) {
+                    String[] ids = new String[size()];
+                    String[] names = new String[size()];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = landmarks.get(i).getId();
+                        names[i] = landmarks.get(i).getName().toLowerCase(Locale.ROOT);
+                    }
+                    indexes = new PrefixIndex[] {
+                        PrefixIndex.build(ids), PrefixIndex.build(names), PrefixIndex.build(compactPinyin), initialsIndex
+                    };
+                    suggestionIndexes = indexes;
+                }
+            }
+        }
+        return indexes;
+    }
+
+    private KdTree getSpatialTree() {
+        KdTree tree = spatialTree;
+        if (tree == null) {
+            synchronized (this) {
+                tree = spatialTree;
+                if (tree == null) {
+                    tree = KdTree.build(xs, zs, unknownCoordinates);
+                    spatialTree = tree;
+                }
+            }
+        }
+        return tree;
+    }
+
+    private BKTree getPinyinTree() {
+        BKTree tree = pinyinTree;
+        if (tree == null) {
+            synchronized (this) {
+                tree = pinyinTree;
+                if (tree == null) {
+                    tree = BKTree.build(compactPinyin);
+                    pinyinTree = tree;
+                }
+            }
+        }
+        return tree;
+    }
+
+    private List<LynnLandmark> toLandmarks(int[] ordinals) {
+        List<LynnLandmark> results = new ArrayList<>(ordinals.length);
+        for (int ordinal : ordinals) {
+            results.add(landmarks.get(ordinal));
+        }
+        return results;
+    }
+
+    static boolean isLetters(String keyword) {
+        if (keyword.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            char c = keyword.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
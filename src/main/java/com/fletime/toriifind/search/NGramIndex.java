@@ -0,0 +1,224 @@
+package com.fletime.toriifind.search;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 字符 n-gram 倒排索引，用于子串查询。
+ * 为每个文本建立单字和双字（bigram）的倒排表，查询时求各 bigram 倒排表的交集，
+ * 再对候选项用 {@link String#contains(CharSequence)} 校验，结果与逐个 contains 扫描完全一致。
+ */
+public final class NGramIndex {
+    private static final int[] EMPTY = new int[0];
+
+    private final String[] texts;
+    private final Map<Character, int[]> unigrams;
+    private final Map<Integer, int[]> bigrams;
+
+    private NGramIndex(String[] texts, Map<Character, int[]> unigrams, Map<Integer, int[]> bigrams) {
+        this.texts = texts;
+        this.unigrams = unigrams;
+        this.bigrams = bigrams;
+    }
+
+    /**
+     * 构建索引
+     * @param texts 每个地标对应的文本，下标即地标序号
+     */
+    public static NGramIndex build(String[] texts) {
+        Map<Character, IntList> unigramLists = new HashMap<>();
+        Map<Integer, IntList> bigramLists = new HashMap<>();
+        for (int ordinal = 0; ordinal < texts.length; ordinal++) {
+            String text = texts[ordinal];
+            if (text == null) {
+                continue;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                unigramLists.computeIfAbsent(c, k -> new IntList()).addOnce(ordinal);
+                if (i + 1 < text.length()) {
+                    bigramLists.computeIfAbsent(bigramKey(c, text.charAt(i + 1)), k -> new IntList()).addOnce(ordinal);
+                }
+            }
+        }
+
+        Map<Character, int[]> unigrams = new HashMap<>(unigramLists.size() * 2);
+        unigramLists.forEach((key, list) -> unigrams.put(key, list.toArray()));
+        Map<Integer, int[]> bigrams = new HashMap<>(bigramLists.size() * 2);
+        bigramLists.forEach((key, list) -> bigrams.put(key, list.toArray()));
+        return new NGramIndex(texts.clone(), unigrams, bigrams);
+    }
+
+    /**
+     * 写入二进制快照（只写倒排表，文本由调用方从地标数据恢复）
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(unigrams.size());
+        for (Map.Entry<Character, int[]> entry : unigrams.entrySet()) {
+            out.writeChar(entry.getKey());
+            writePosting(out, entry.getValue());
+        }
+        out.writeInt(bigrams.size());
+        for (Map.Entry<Integer, int[]> entry : bigrams.entrySet()) {
+            out.writeInt(entry.getKey());
+            writePosting(out, entry.getValue());
+        }
+    }
+
+    private static void writePosting(DataOutputStream out, int[] posting) throws IOException {
+        out.writeInt(posting.length);
+        for (int ordinal : posting) {
+            out.writeInt(ordinal);
+        }
+    }
+
+    /**
+     * 从二进制快照读取
+     * @param texts 每个地标对应的文本，下标即地标序号
+     */
+    public static NGramIndex readFrom(ByteBuffer buffer, String[] texts) {
+        int unigramCount = buffer.getInt();
+        Map<Character, int[]> unigrams = new HashMap<>(unigramCount * 2);
+        for (int i = 0; i < unigramCount; i++) {
+            char key = buffer.getChar();
+            unigrams.put(key, readPosting(buffer));
+        }
+        int bigramCount = buffer.getInt();
+        Map<Integer, int[]> bigrams = new HashMap<>(bigramCount * 2);
+        for (int i = 0; i < bigramCount; i++) {
+            int key = buffer.getInt();
+            bigrams.put(key, readPosting(buffer));
+        }
+        return new NGramIndex(texts.clone(), unigrams, bigrams);
+    }
+
+    private static int[] readPosting(ByteBuffer buffer) {
+        int[] posting = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(posting);
+        buffer.position(buffer.position() + posting.length * Integer.BYTES);
+        return posting;
+    }
+
+    private static int bigramKey(char first, char second) {
+        return (first << 16) | second;
+    }
+
+    /**
+     * 查找包含 keyword 的所有文本
+     * @return 按序号升序排列的结果
+     */
+    public int[] findContaining(String keyword) {
+        if (keyword.isEmpty()) {
+            int[] all = new int[texts.length];
+            int count = 0;
+            for (int i = 0; i < texts.length; i++) {
+                if (texts[i] != null) {
+                    all[count++] = i;
+                }
+            }
+            return Arrays.copyOf(all, count);
+        }
+        if (keyword.length() == 1) {
+            return unigrams.getOrDefault(keyword.charAt(0), EMPTY).clone();
+        }
+
+        // 先取最短的倒排表作为候选，再逐个与其它倒排表求交集
+        int gramCount = keyword.length() - 1;
+        int[][] postings = new int[gramCount][];
+        for (int i = 0; i < gramCount; i++) {
+            int[] posting = bigrams.get(bigramKey(keyword.charAt(i), keyword.charAt(i + 1)));
+            if (posting == null) {
+                return EMPTY;
+            }
+            postings[i] = posting;
+        }
+        Arrays.sort(postings, (a, b) -> Integer.compare(a.length, b.length));
+
+        int[] candidates = postings[0];
+        for (int i = 1; i < postings.length && candidates.length > 0; i++) {
+            candidates = intersect(candidates, postings[i]);
+        }
+
+        if (keyword.length() == 2) {
+            return candidates == postings[0] ? candidates.clone() : candidates;
+        }
+        int[] result = new int[candidates.length];
+        int count = 0;
+        for (int ordinal : candidates) {
+            if (texts[ordinal].contains(keyword)) {
+                result[count++] = ordinal;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * 两个升序数组求交集
+     */
+    static int[] intersect(int[] first, int[] second) {
+        int[] result = new int[Math.min(first.length, second.length)];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * 两个升序数组求并集
+     */
+    static int[] union(int[] first, int[] second) {
+        int[] result = new int[first.length + second.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < first.length || j < second.length) {
+            if (j >= second.length || (i < first.length && first[i] < second[j])) {
+                result[count++] = first[i++];
+            } else if (i >= first.length || second[j] < first[i]) {
+                result[count++] = second[j++];
+            } else {
+                result[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * 构建期间使用的可增长 int 数组，按升序追加且不重复
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void addOnce(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.fletime.toriifind.search;
+
+import net.sourceforge.pinyin4j.PinyinHelper;
+import net.sourceforge.pinyin4j.format.HanyuPinyinCaseType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinOutputFormat;
+import net.sourceforge.pinyin4j.format.HanyuPinyinToneType;
+import net.sourceforge.pinyin4j.format.exception.BadHanyuPinyinOutputFormatCombination;
+
+/**
+ * 拼音转换工具，基于 pinyin4j。
+ * 只应在构建索引时调用，查询时使用 {@link LandmarkIndex} 中预先计算好的结果。
+ */
+public final class PinyinConverter {
+    // 拼音格式化工具：小写，不带声调
+    private static final HanyuPinyinOutputFormat PINYIN_FORMAT = createFormat();
+
+    private PinyinConverter() {}
+
+    private static HanyuPinyinOutputFormat createFormat() {
+        HanyuPinyinOutputFormat format = new HanyuPinyinOutputFormat();
+        format.setCaseType(HanyuPinyinCaseType.LOWERCASE);
+        format.setToneType(HanyuPinyinToneType.WITHOUT_TONE);
+        return format;
+    }
+
+    /**
+     * 判断字符是否为常用汉字
+     */
+    public static boolean isHanzi(char c) {
+        return c >= '\u4E00' && c <= '\u9FA5';
+    }
+
+    /**
+     * 获取单个汉字的拼音（多音字只取第一个读音）
+     * @return 拼音，无法转换时返回 null
+     */
+    public static String syllableOf(char c) {
+        try {
+            String[] pinyinArray = PinyinHelper.toHanyuPinyinStringArray(c, PINYIN_FORMAT);
+            if (pinyinArray != null && pinyinArray.length > 0) {
+                return pinyinArray[0];
+            }
+        } catch (BadHanyuPinyinOutputFormatCombination e) {
+            // 格式固定，不会发生
+        }
+        return null;
+    }
+
+    /**
+     * 将中文字符串转换为拼音字符串（不带声调）
+     * @param chineseStr 中文字符串
+     * @return 对应的拼音字符串，非中文字符保持不变
+     */
+    public static String toPinyin(String chineseStr) {
+        if (chineseStr == null || chineseStr.isEmpty()) {
+            return "";
+        }
+        StringBuilder pinyinBuilder = new StringBuilder(chineseStr.length() * 4);
+        for (int i = 0; i < chineseStr.length(); i++) {
+            char c = chineseStr.charAt(i);
+            if (isHanzi(c)) {
+                String syllable = syllableOf(c);
+                if (syllable != null) {
+                    pinyinBuilder.append(syllable);
+                }
+            } else {
+                // 非汉字直接添加
+                pinyinBuilder.append(c);
+            }
+        }
+        return pinyinBuilder.toString();
+    }
+
+    /**
+     * 将中文字符串转换为以空格分隔音节的完整拼音，例如 "鳕鱼神社" -> "xue yu shen she"。
+     * 连续的非汉字字符视为一个音节。
+     */
+    public static String toSyllables(String chineseStr) {
+        if (chineseStr == null || chineseStr.isEmpty()) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder(chineseStr.length() * 5);
+        boolean inWord = false;
+        for (int i = 0; i < chineseStr.length(); i++) {
+            char c = chineseStr.charAt(i);
+            if (isHanzi(c)) {
+                String syllable = syllableOf(c);
+                if (syllable == null) {
+                    continue;
+                }
+                if (builder.length() > 0) {
+                    builder.append(' ');
+                }
+                builder.append(syllable);
+                inWord = false;
+            } else if (Character.isWhitespace(c)) {
+                inWord = false;
+            } else {
+                if (!inWord && builder.length() > 0) {
+                    builder.append(' ');
+                }
+                builder.append(c);
+                inWord = true;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 由 {@link #toSyllables(String)} 的结果提取拼音首字母，例如 "xue yu shen she" -> "xyss"
+     */
+    public static String initialsOf(String syllables) {
+        StringBuilder builder = new StringBuilder();
+        boolean atStart = true;
+        for (int i = 0; i < syllables.length(); i++) {
+            char c = syllables.charAt(i);
+            if (c == ' ') {
+                atStart = true;
+            } else if (atStart) {
+                if (Character.isLetterOrDigit(c)) {
+                    builder.append(Character.toLowerCase(c));
+                }
+                atStart = false;
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,112 @@
+package com.fletime.toriifind.search;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 基于有序数组的前缀索引。
+ * 键按字典序排序，前缀查询通过二分查找定位区间，不需要扫描全部地标。
+ * 定位区间耗时 O(查询长度 × log n)；{@link #findByPrefix} 还要把命中的序号重新排成文件顺序，
+ * 总耗时为 O(查询长度 × log n + 命中数 × log 命中数)。补全等只需要按键顺序读取的场景
+ * 应直接使用 {@link #lowerBound} 和 {@link #getOrdinal}，没有排序开销。
+ */
+public final class PrefixIndex {
+    private final String[] keys;
+    private final int[] ordinals;
+
+    private PrefixIndex(String[] keys, int[] ordinals) {
+        this.keys = keys;
+        this.ordinals = ordinals;
+    }
+
+    /**
+     * 构建前缀索引
+     * @param keys 每个地标对应的键，下标即地标序号；null 或空字符串的键会被忽略
+     */
+    public static PrefixIndex build(String[] keys) {
+        Integer[] order = new Integer[keys.length];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && !keys[i].isEmpty()) {
+                order[count++] = i;
+            }
+        }
+        Integer[] valid = Arrays.copyOf(order, count);
+        Arrays.sort(valid, (a, b) -> {
+            int cmp = keys[a].compareTo(keys[b]);
+            return cmp != 0 ? cmp : Integer.compare(a, b);
+        });
+
+        String[] sortedKeys = new String[count];
+        int[] sortedOrdinals = new int[count];
+        for (int i = 0; i < count; i++) {
+            sortedKeys[i] = keys[valid[i]];
+            sortedOrdinals[i] = valid[i];
+        }
+        return new PrefixIndex(sortedKeys, sortedOrdinals);
+    }
+
+    /**
+     * 写入二进制快照（只写排序后的序号，键由调用方从地标数据恢复）
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(ordinals.length);
+        for (int ordinal : ordinals) {
+            out.writeInt(ordinal);
+        }
+    }
+
+    /**
+     * 从二进制快照读取
+     * @param keys 每个地标对应的键，下标即地标序号
+     */
+    public static PrefixIndex readFrom(ByteBuffer buffer, String[] keys) {
+        int[] ordinals = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(ordinals);
+        buffer.position(buffer.position() + ordinals.length * Integer.BYTES);
+        String[] sortedKeys = new String[ordinals.length];
+        for (int i = 0; i < ordinals.length; i++) {
+            sortedKeys[i] = keys[ordinals[i]];
+        }
+        return new PrefixIndex(sortedKeys, ordinals);
+    }
+
+    public int size() { return keys.length; }
+    public String getKey(int position) { return keys[position]; }
+    public int getOrdinal(int position) { return ordinals[position]; }
+
+    /**
+     * 第一个不小于 prefix 的位置
+     */
+    public int lowerBound(String prefix) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 查找键以 prefix 开头的所有地标序号。
+     * 区间内的序号按键排列，返回前会重新排序为文件顺序，耗时 O(查询长度 × log n + 命中数 × log 命中数)
+     * @return 按地标序号升序排列的结果
+     */
+    public int[] findByPrefix(String prefix) {
+        int start = lowerBound(prefix);
+        int end = start;
+        while (end < keys.length && keys[end].startsWith(prefix)) {
+            end++;
+        }
+        int[] result = Arrays.copyOfRange(ordinals, start, end);
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,167 @@
+package com.fletime.toriifind.service;
+
+import com.fletime.toriifind.ToriiFind;
+import com.fletime.toriifind.config.SourceConfig;
+import com.fletime.toriifind.service.LynnApiService.LynnLandmark;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Lynn API 查询结果缓存。
+ * 以 (apiBaseUrl, source, 查询) 为键，按访问顺序做 LRU 淘汰；
+ * 超过 TTL 的结果在允许的过期时间内仍会立即返回，同时在后台重新请求（stale-while-revalidate）。
+ */
+public class ApiCacheService {
+
+    private static class Entry {
+        private final List<LynnLandmark> value;
+        private final long fetchedAt;
+        private boolean refreshing;
+
+        private Entry(List<LynnLandmark> value, long fetchedAt) {
+            this.value = value;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    // accessOrder = true，迭代顺序即最近最少使用顺序
+    private static final LinkedHashMap<String, Entry> CACHE = new LinkedHashMap<>(64, 0.75f, true);
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong STALE_HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+    private static final AtomicLong REFRESHES = new AtomicLong();
+    private static final AtomicLong EVICTIONS = new AtomicLong();
+
+    /**
+     * 生成缓存键
+     */
+    public static String key(String apiBaseUrl, String source, String kind, String query) {
+        return apiBaseUrl + '\n' + source + '\n' + kind + '\n' + (query == null ? "" : query.trim());
+    }
+
+    /**
+     * 读取缓存，未命中或过期太久时发起请求；结果已过 TTL 但仍在允许的过期时间内时，
+     * 立即返回旧结果并在后台刷新。请求失败不会写入缓存。
+     * @param key 缓存键
+     * @param loader 发起请求
+     * @return 查询结果（不可修改）
+     */
+    public static CompletableFuture<List<LynnLandmark>> get(String key, Supplier<CompletableFuture<List<LynnLandmark>>> loader) {
+        long ttlMs = getTtlMs();
+        if (ttlMs <= 0) {
+            // 缓存已关闭
+            MISSES.incrementAndGet();
+            return loader.get();
+        }
+
+        long now = System.currentTimeMillis();
+        boolean refresh = false;
+        List<LynnLandmark> stale = null;
+        synchronized (CACHE) {
+            Entry entry = CACHE.get(key);
+            if (entry != null) {
+                long age = now - entry.fetchedAt;
+                if (age < ttlMs) {
+                    HITS.incrementAndGet();
+                    return CompletableFuture.completedFuture(entry.value);
+                }
+                if (age < ttlMs + getMaxStaleMs()) {
+                    STALE_HITS.incrementAndGet();
+                    stale = entry.value;
+                    if (!entry.refreshing) {
+                        entry.refreshing = true;
+                        refresh = true;
+                    }
+                }
+            }
+        }
+
+        if (stale != null) {
+            if (refresh) {
+                refreshInBackground(key, loader);
+            }
+            return CompletableFuture.completedFuture(stale);
+        }
+
+        MISSES.incrementAndGet();
+        CompletableFuture<List<LynnLandmark>> request = loader.get();
+        return TaskExecutorService.propagateCancel(request.thenApply(result -> {
+            List<LynnLandmark> value = List.copyOf(result);
+            put(key, value);
+            return value;
+        }), request);
+    }
+
+    private static void refreshInBackground(String key, Supplier<CompletableFuture<List<LynnLandmark>>> loader) {
+        REFRESHES.incrementAndGet();
+        loader.get().whenComplete((result, error) -> {
+            if (error == null) {
+                put(key, List.copyOf(result));
+                return;
+            }
+            // 刷新失败时保留旧结果，下次访问再尝试
+            synchronized (CACHE) {
+                Entry entry = CACHE.get(key);
+                if (entry != null) {
+                    entry.refreshing = false;
+                }
+            }
+            System.err.println("[ToriiFind] 后台刷新 API 缓存失败: " + error.getMessage());
+        });
+    }
+
+    private static void put(String key, List<LynnLandmark> value) {
+        int maxEntries = getMaxEntries();
+        synchronized (CACHE) {
+            CACHE.put(key, new Entry(value, System.currentTimeMillis()));
+            Iterator<Entry> iterator = CACHE.values().iterator();
+            while (CACHE.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                EVICTIONS.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 清空缓存（重载配置时调用）
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    private static long getTtlMs() {
+        SourceConfig config = ToriiFind.getSourceConfig();
+        return (config != null ? config.getApiCacheTtlSeconds() : 60) * 1000L;
+    }
+
+    private static long getMaxStaleMs() {
+        SourceConfig config = ToriiFind.getSourceConfig();
+        return Math.max(0, config != null ? config.getApiCacheMaxStaleSeconds() : 600) * 1000L;
+    }
+
+    private static int getMaxEntries() {
+        SourceConfig config = ToriiFind.getSourceConfig();
+        return Math.max(1, config != null ? config.getApiCacheMaxEntries() : 256);
+    }
+
+    public static int getSize() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    public static long getHitCount() { return HITS.get(); }
+    public static long getStaleHitCount() { return STALE_HITS.get(); }
+    public static long getMissCount() { return MISSES.get(); }
+    public static long getRefreshCount() { return REFRESHES.get(); }
+    public static long getEvictionCount() { return EVICTIONS.get(); }
+}
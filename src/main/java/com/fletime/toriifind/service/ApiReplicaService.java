@@ -0,0 +1,160 @@
+package com.fletime.toriifind.service;
+
+import com.fletime.toriifind.ToriiFind;
+import com.fletime.toriifind.config.SourceConfig;
+import com.fletime.toriifind.service.LynnApiService.LynnLandmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * API 数据源的离线副本。
+ * 对启用了 offlineReplica 的 API 数据源，定期拉取零洲和后土的全部地标，
+ * 以与 JSON 数据源相同的格式保存到本地数据文件，之后的查询直接使用本地快照和索引，API 只用于保持数据新鲜。
+ */
+public class ApiReplicaService {
+
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
+
+    /**
+     * 数据源是否启用了离线副本
+     */
+    public static boolean isReplicated(SourceConfig.DataSource source) {
+        return source != null && source.isApiMode() && source.isOfflineReplica() && source.getApiBaseUrl() != null;
+    }
+
+    /**
+     * 数据源是否已有可用的离线副本
+     */
+    public static boolean hasReplica(String sourceName, SourceConfig.DataSource source) {
+        return isReplicated(source) && Files.exists(LocalDataService.getLocalDataFile(sourceName));
+    }
+
+    /**
+     * 同步离线副本：并行获取零洲和后土的全部地标，内容有变化时替换本地数据文件
+     * @return 本地副本是否被更新
+     * @throws IOException 请求或写入失败
+     */
+    public static boolean sync(String sourceName, SourceConfig.DataSource source) throws IOException {
+        CompletableFuture<List<LynnLandmark>> zerothFuture = LynnApiService.fetchAllAsync(source.getApiBaseUrl(), "zth");
+        CompletableFuture<List<LynnLandmark>> houtuFuture = LynnApiService.fetchAllAsync(source.getApiBaseUrl(), "houtu");
+        List<LynnLandmark> zeroth;
+        List<LynnLandmark> houtu;
+        try {
+            zeroth = zerothFuture.join();
+            houtu = houtuFuture.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ioException ? ioException : new IOException(cause);
+        }
+        if (zeroth.isEmpty() && houtu.isEmpty()) {
+            // 解析失败或服务器返回空数据时保留旧副本
+            throw new IOException("API 未返回任何地标");
+        }
+
+        // 版本号由内容计算，数据没有变化时不重写文件，快照也不会失效
+        String version = "api-" + checksum(zeroth, houtu);
+        Path localFile = LocalDataService.getLocalDataFile(sourceName);
+        // 与下载使用同一把锁，定时同步和手动同步不会同时替换文件
+        ReentrantLock lock = LocalDataService.lockSource(sourceName);
+        try {
+            return write(sourceName, source, localFile, version, zeroth, houtu);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean write(String sourceName, SourceConfig.DataSource source, Path localFile, String version,
+                                 List<LynnLandmark> zeroth, List<LynnLandmark> houtu) throws IOException {
+        if (Files.exists(localFile) && version.equals(LocalDataService.getLocalVersion(localFile))) {
+            return false;
+        }
+
+        Files.createDirectories(localFile.getParent());
+        Path tempFile = Files.createTempFile(localFile.getParent(), localFile.getFileName().toString(), ".tmp");
+        // 写入的同时计算 SHA-256，记录清单时不需要再读一遍文件
+        MessageDigest digest = DataManifestService.newSha256();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new DigestOutputStream(Files.newOutputStream(tempFile), digest), StandardCharsets.UTF_8))) {
+            LynnJsonService.writeLandmarks(writer, version, zeroth, houtu);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        try {
+            Files.move(tempFile, localFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, localFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        LandmarkSnapshotService.invalidate(localFile);
+        DataManifestService.recordDownload(sourceName, source.getApiBaseUrl(), null, null, localFile, version,
+            HexFormat.of().formatHex(digest.digest()));
+        System.out.println("[ToriiFind] 已同步 API 数据源离线副本: " + sourceName
+            + "（零洲 " + zeroth.size() + " 条，后土 " + houtu.size() + " 条）");
+        return true;
+    }
+
+    /**
+     * 异步同步离线副本，失败时返回 false 并保留旧副本
+     */
+    public static CompletableFuture<Boolean> syncAsync(String sourceName, SourceConfig.DataSource source) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return sync(sourceName, source);
+            } catch (Exception e) {
+                System.err.println("[ToriiFind] 同步离线副本失败 " + sourceName + ": " + e.getMessage());
+                return false;
+            }
+        }, TaskExecutorService.io());
+    }
+
+    /**
+     * 启动后台同步：立即同步一次所有启用了离线副本的 API 数据源，之后按 replicaSyncMinutes 定期同步
+     */
+    public static void startBackgroundSync() {
+        if (STARTED.compareAndSet(false, true)) {
+            syncAllAndReschedule();
+        }
+    }
+
+    private static void syncAllAndReschedule() {
+        SourceConfig config = ToriiFind.getSourceConfig();
+        CompletableFuture<?>[] tasks = config.getSources().entrySet().stream()
+            .filter(entry -> entry.getValue().isEnabled() && isReplicated(entry.getValue()))
+            .map(entry -> syncAsync(entry.getKey(), entry.getValue()))
+            .toArray(CompletableFuture[]::new);
+        long minutes = Math.max(1, config.getReplicaSyncMinutes());
+        CompletableFuture.allOf(tasks).whenComplete((v, error) ->
+            TaskExecutorService.delayed(minutes, TimeUnit.MINUTES).execute(ApiReplicaService::syncAllAndReschedule));
+    }
+
+    private static String checksum(List<LynnLandmark> zeroth, List<LynnLandmark> houtu) {
+        CRC32 crc = new CRC32();
+        for (List<LynnLandmark> landmarks : List.of(zeroth, houtu)) {
+            for (LynnLandmark landmark : landmarks) {
+                String line = landmark.getId() + '\t' + landmark.getName() + '\t' + landmark.getGrade() + '\t'
+                    + landmark.getStatus() + '\t' + landmark.getCoordinates() + '\n';
+                crc.update(line.getBytes(StandardCharsets.UTF_8));
+            }
+            crc.update(0);
+        }
+        return Long.toHexString(crc.getValue());
+    }
+}
@@ -8,18 +8,13 @@ import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.List;
 
 public class AsyncSourceStatusService {
     
-    private static final Executor ASYNC_EXECUTOR = Executors.newCachedThreadPool(r -> {
-        Thread thread = new Thread(r, "ToriiFind-StatusCheck");
-        thread.setDaemon(true);
-        return thread;
-    });
+    private static final Executor ASYNC_EXECUTOR = TaskExecutorService.io();
     
     private static final int MAX_CONCURRENT_CHECKS = 3;
     private static final int TIMEOUT_SECONDS = 5;
@@ -89,7 +84,7 @@ public class AsyncSourceStatusService {
             }
             
             // 在主线程显示最终结果
-            net.minecraft.client.MinecraftClient.getInstance().execute(() -> {
+            TaskExecutorService.mainThread().execute(() -> {
                 showFinalResults(context, sources, results);
             });
         }, ASYNC_EXECUTOR);
@@ -101,7 +96,7 @@ public class AsyncSourceStatusService {
     private static void sendProgressUpdate(FabricClientCommandSource context, String sourceName, 
                                          SourceStatusService.SourceStatus status, int completed, int total) {
         // 确保在主线程执行UI更新
-        net.minecraft.client.MinecraftClient.getInstance().execute(() -> {
+        TaskExecutorService.mainThread().execute(() -> {
             String statusText = status.isAvailable() ? "§a✓" : "§c✗";
             String progressText = String.format("§7[%d/%d]", completed, total);
             
@@ -152,11 +147,9 @@ public class AsyncSourceStatusService {
             // 显示镜像状态（Lynn JSON模式）
             if (!source.isApiMode() && source.getMirrorUrls() != null && source.getMirrorUrls().length > 0) {
                 // 异步检查镜像状态
-                MirrorStatusService.checkAllMirrors(source).thenAccept(mirrorStatuses -> {
-                    net.minecraft.client.MinecraftClient.getInstance().execute(() -> {
-                        showMirrorStatuses(context, name, mirrorStatuses);
-                    });
-                });
+                MirrorStatusService.checkAllMirrors(source).thenAcceptAsync(mirrorStatuses -> {
+                    showMirrorStatuses(context, name, mirrorStatuses);
+                }, TaskExecutorService.mainThread());
             }
         }
         
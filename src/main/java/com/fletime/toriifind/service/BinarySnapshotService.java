@@ -0,0 +1,210 @@
+package com.fletime.toriifind.service;
+
+import com.fletime.toriifind.search.LandmarkIndex;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 二进制快照文件。
+ * 在数据文件旁写入 .snapshot 文件，保存已计算好的拼音、首字母和索引，
+ * 冷启动时整体读入内存后直接解码，无需重新解析 JSON 和调用 pinyin4j。
+ *
+ * 文件结构：魔数、格式版本、源文件大小和修改时间、数据版本、载荷长度、载荷 CRC32，
+ * 随后是载荷（字符串表、零洲索引、后土索引）。
+ */
+public class BinarySnapshotService {
+    private static final int MAGIC = 0x54465342; // "TFSB"
+    private static final int FORMAT_VERSION = 1;
+    private static final String EXTENSION = ".snapshot";
+
+    private static final AtomicLong LOADED = new AtomicLong();
+    private static final AtomicLong REBUILT = new AtomicLong();
+
+    /**
+     * 获取数据文件对应的快照文件路径
+     */
+    public static Path getSnapshotFile(Path dataFile) {
+        String fileName = dataFile.getFileName().toString();
+        if (fileName.endsWith(".json")) {
+            fileName = fileName.substring(0, fileName.length() - ".json".length());
+        }
+        return dataFile.resolveSibling(fileName + EXTENSION);
+    }
+
+    /**
+     * 读取数据文件对应的二进制快照
+     * @param dataFile 数据文件
+     * @param attributes 数据文件当前的属性
+     * @return 快照；文件不存在、已过期或已损坏时返回 null
+     */
+    public static LandmarkSnapshotService.Snapshot load(Path dataFile, BasicFileAttributes attributes) {
+        Path snapshotFile = getSnapshotFile(dataFile);
+        if (!Files.isRegularFile(snapshotFile)) {
+            return null;
+        }
+
+        // 读入堆内存而不是内存映射：映射要等到 GC 才释放，期间 Windows 上无法替换或删除快照文件
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshotFile));
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                System.out.println("[ToriiFind] 快照格式不匹配，将重新生成: " + snapshotFile.getFileName());
+                return null;
+            }
+
+            long sourceSize = buffer.getLong();
+            long sourceModified = buffer.getLong();
+            String version = readString(buffer);
+            if (sourceSize != attributes.size() || sourceModified != attributes.lastModifiedTime().toMillis()
+                    || !Objects.equals(version, LocalDataService.getLocalVersion(dataFile))) {
+                System.out.println("[ToriiFind] 快照已过期，将重新生成: " + snapshotFile.getFileName());
+                return null;
+            }
+
+            int payloadLength = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (payloadLength != buffer.remaining()) {
+                System.err.println("[ToriiFind] 快照长度不正确，将重新生成: " + snapshotFile.getFileName());
+                return null;
+            }
+            ByteBuffer payload = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                System.err.println("[ToriiFind] 快照校验失败，将重新生成: " + snapshotFile.getFileName());
+                return null;
+            }
+
+            String[] strings = new String[payload.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(payload);
+            }
+            LandmarkIndex zeroth = LandmarkIndex.readFrom(payload, ref -> ref < 0 ? null : strings[ref]);
+            LandmarkIndex houtu = LandmarkIndex.readFrom(payload, ref -> ref < 0 ? null : strings[ref]);
+
+            LOADED.incrementAndGet();
+            return new LandmarkSnapshotService.Snapshot(version, zeroth, houtu, sourceSize, sourceModified);
+        } catch (Exception e) {
+            // 截断或损坏的快照会在解码时越界，直接重新生成
+            System.err.println("[ToriiFind] 读取快照失败，将重新生成: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 将快照写入数据文件旁的 .snapshot 文件（先写临时文件再原子替换）
+     * @param dataFile 数据文件
+     * @param snapshot 快照
+     */
+    public static void save(Path dataFile, LandmarkSnapshotService.Snapshot snapshot) {
+        Path snapshotFile = getSnapshotFile(dataFile);
+        Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try {
+            byte[] payload = encodePayload(snapshot);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            try (OutputStream stream = Files.newOutputStream(tempFile);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(snapshot.getFileSize());
+                out.writeLong(snapshot.getLastModified());
+                writeString(out, snapshot.getVersion());
+                out.writeInt(payload.length);
+                out.writeInt((int) crc.getValue());
+                out.write(payload);
+            }
+
+            try {
+                Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            REBUILT.incrementAndGet();
+        } catch (IOException e) {
+            System.err.println("[ToriiFind] 写入快照失败: " + e.getMessage());
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 删除数据文件对应的快照
+     */
+    public static void delete(Path dataFile) {
+        try {
+            Files.deleteIfExists(getSnapshotFile(dataFile));
+        } catch (IOException e) {
+            System.err.println("[ToriiFind] 删除快照失败: " + e.getMessage());
+        }
+    }
+
+    private static byte[] encodePayload(LandmarkSnapshotService.Snapshot snapshot) throws IOException {
+        // 字符串表去重，记录中只保存下标
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> refs = new HashMap<>();
+        Consumer<String> intern = value -> {
+            if (value != null && !refs.containsKey(value)) {
+                refs.put(value, strings.size());
+                strings.add(value);
+            }
+        };
+        snapshot.getZerothIndex().collectStrings(intern);
+        snapshot.getHoutuIndex().collectStrings(intern);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(strings.size());
+            for (String value : strings) {
+                writeString(out, value);
+            }
+            snapshot.getZerothIndex().writeTo(out, value -> value == null ? -1 : refs.get(value));
+            snapshot.getHoutuIndex().writeTo(out, value -> value == null ? -1 : refs.get(value));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static long getLoadedCount() { return LOADED.get(); }
+    public static long getRebuiltCount() { return REBUILT.get(); }
+}
@@ -0,0 +1,188 @@
+package com.fletime.toriifind.service;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按主机的熔断器。
+ * 连续失败达到阈值后熔断（OPEN），之后对该主机的请求立即失败，不再等待超时；
+ * 冷却时间到后在后台发送探测请求（HALF_OPEN），成功则恢复（CLOSED），失败则延长冷却时间继续熔断。
+ */
+public class CircuitBreakerService {
+    // 连续失败多少次后熔断
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long INITIAL_COOLDOWN_MS = 30_000;
+    private static final long MAX_COOLDOWN_MS = 5 * 60_000;
+
+    private static final Map<String, Breaker> BREAKERS = new ConcurrentHashMap<>();
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public static class Breaker {
+        private final String host;
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long cooldownMs = INITIAL_COOLDOWN_MS;
+        private long openedAt;
+        private String probeUrl;
+
+        private Breaker(String host) {
+            this.host = host;
+        }
+
+        public synchronized State getState() { return state; }
+        public synchronized int getConsecutiveFailures() { return consecutiveFailures; }
+        public String getHost() { return host; }
+
+        /**
+         * 距离下一次后台探测的剩余秒数
+         */
+        public synchronized long getRetryInSeconds() {
+            if (state != State.OPEN) {
+                return 0;
+            }
+            long remaining = openedAt + cooldownMs - System.currentTimeMillis();
+            return Math.max(0, TimeUnit.MILLISECONDS.toSeconds(remaining + 999));
+        }
+
+        private synchronized void onSuccess() {
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            cooldownMs = INITIAL_COOLDOWN_MS;
+        }
+
+        /**
+         * @return 是否由此次失败触发熔断（需要安排后台探测）
+         */
+        private synchronized boolean onFailure(String url) {
+            consecutiveFailures++;
+            probeUrl = url;
+            if (state == State.HALF_OPEN) {
+                // 探测失败，延长冷却时间
+                cooldownMs = Math.min(cooldownMs * 2, MAX_COOLDOWN_MS);
+                open();
+                return true;
+            }
+            if (state == State.CLOSED && consecutiveFailures >= FAILURE_THRESHOLD) {
+                open();
+                return true;
+            }
+            return false;
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+
+        private synchronized String beginProbe() {
+            if (state != State.OPEN) {
+                return null;
+            }
+            state = State.HALF_OPEN;
+            return probeUrl;
+        }
+    }
+
+    /**
+     * 是否允许向该地址发送请求（熔断中和探测中的主机不允许）
+     */
+    public static boolean allowRequest(String url) {
+        Breaker breaker = getBreaker(url);
+        return breaker == null || breaker.getState() == State.CLOSED;
+    }
+
+    /**
+     * 请求成功，恢复该主机
+     */
+    public static void recordSuccess(String url) {
+        Breaker breaker = getBreaker(url);
+        if (breaker != null) {
+            breaker.onSuccess();
+        }
+    }
+
+    /**
+     * 请求失败，达到阈值时熔断并安排后台探测
+     */
+    public static void recordFailure(String url) {
+        String host = hostOf(url);
+        if (host == null) {
+            return;
+        }
+        Breaker breaker = BREAKERS.computeIfAbsent(host, Breaker::new);
+        if (breaker.onFailure(url)) {
+            System.err.println("[ToriiFind] " + host + " 连续请求失败，暂停请求 "
+                + TimeUnit.MILLISECONDS.toSeconds(breaker.cooldownMs) + " 秒");
+            scheduleProbe(breaker);
+        }
+    }
+
+    /**
+     * 获取该地址所在主机的熔断器
+     * @return 熔断器，没有失败记录时返回 null
+     */
+    public static Breaker getBreaker(String url) {
+        String host = hostOf(url);
+        return host == null ? null : BREAKERS.get(host);
+    }
+
+    /**
+     * 获取所有未处于正常状态的主机
+     */
+    public static Map<String, Breaker> getOpenBreakers() {
+        Map<String, Breaker> open = new LinkedHashMap<>();
+        for (Map.Entry<String, Breaker> entry : BREAKERS.entrySet()) {
+            if (entry.getValue().getState() != State.CLOSED) {
+                open.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return open;
+    }
+
+    /**
+     * 熔断时请求失败的提示
+     */
+    public static String describeOpen(String url) {
+        Breaker breaker = getBreaker(url);
+        if (breaker != null && breaker.getState() == State.HALF_OPEN) {
+            return "熔断中，正在探测 " + breaker.getHost();
+        }
+        long retryIn = breaker != null ? breaker.getRetryInSeconds() : 0;
+        return "熔断中，" + retryIn + " 秒后重试";
+    }
+
+    private static void scheduleProbe(Breaker breaker) {
+        long delay;
+        synchronized (breaker) {
+            delay = breaker.cooldownMs;
+        }
+        TaskExecutorService.delayed(delay, TimeUnit.MILLISECONDS).execute(() -> {
+            String url = breaker.beginProbe();
+            if (url == null) {
+                return;
+            }
+            if (HttpService.probe(url)) {
+                System.out.println("[ToriiFind] " + breaker.getHost() + " 已恢复");
+                breaker.onSuccess();
+            } else if (breaker.onFailure(url)) {
+                scheduleProbe(breaker);
+            }
+        });
+    }
+
+    private static String hostOf(String url) {
+        try {
+            return url == null ? null : URI.create(url).getHost();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.fletime.toriifind.service;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 本地数据清单（config/toriifind/state/manifest.json）。
+ * 记录每个数据源最近一次下载所用的 URL 及其 ETag / Last-Modified，
+ * 用于发送条件请求，数据未变化时服务器只需返回 304；
+ * 同时记录本地文件的版本、大小、修改时间、SHA-256、下载时间和解析状态，
+ * 版本和状态查询直接从清单回答，只需检查文件大小和修改时间是否与记录一致，不再读取数据文件。
+ */
+public class DataManifestService {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Type MAP_TYPE = new TypeToken<LinkedHashMap<String, Entry>>() {}.getType();
+
+    private static Map<String, Entry> entries;
+
+    /** 解析状态：尚未解析过 */
+    public static final String PARSE_UNKNOWN = "unknown";
+    /** 解析状态：解析成功 */
+    public static final String PARSE_OK = "ok";
+    /** 解析状态：解析失败 */
+    public static final String PARSE_FAILED = "failed";
+
+    public static class Entry {
+        private String url;
+        private String etag;
+        private String lastModified;
+        private String version;
+        private long size = -1;           // 本地文件大小（字节）
+        private long modifiedAt = -1;     // 本地文件修改时间（毫秒）
+        private String sha256;            // 本地文件内容的 SHA-256（十六进制）
+        private long downloadedAt;        // 下载完成时间（毫秒）
+        private String parseStatus = PARSE_UNKNOWN;
+        private String parseError;
+
+        public Entry() {}
+
+        public Entry(String url, String etag, String lastModified, String version) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.version = version;
+        }
+
+        public String getUrl() { return url; }
+        public String getEtag() { return etag; }
+        public String getLastModified() { return lastModified; }
+        public String getVersion() { return version; }
+        public long getSize() { return size; }
+        public long getModifiedAt() { return modifiedAt; }
+        public String getSha256() { return sha256; }
+        public long getDownloadedAt() { return downloadedAt; }
+        public String getParseStatus() { return parseStatus != null ? parseStatus : PARSE_UNKNOWN; }
+        public String getParseError() { return parseError; }
+
+        /**
+         * 记录是否仍然描述磁盘上的文件（大小和修改时间一致）
+         */
+        public boolean describes(BasicFileAttributes attributes) {
+            return size == attributes.size() && modifiedAt == attributes.lastModifiedTime().toMillis();
+        }
+
+        /**
+         * 是否有可用于条件请求的校验信息
+         */
+        public boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+    }
+
+    /**
+     * 获取清单文件路径
+     */
+    public static Path getManifestFile() {
+        return LocalDataService.getStateDir().resolve("manifest.json");
+    }
+
+    /**
+     * 旧版本的清单位置，与数据文件同目录，会被名为 manifest 的数据源覆盖
+     */
+    private static Path getLegacyManifestFile() {
+        return LocalDataService.getLocalDataDir().resolve("manifest.json");
+    }
+
+    /**
+     * 获取数据源的清单记录
+     * @return 记录，不存在时返回 null
+     */
+    public static synchronized Entry getEntry(String sourceName) {
+        return entries().get(sourceName);
+    }
+
+    /**
+     * 查找由指定 URL 下载的记录（镜像检测时复用校验信息）
+     * @return 记录，不存在时返回 null
+     */
+    public static synchronized Entry findByUrl(String url) {
+        for (Entry entry : entries().values()) {
+            if (url != null && url.equals(entry.getUrl())) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 记录一次成功下载并保存清单：读取文件的大小、修改时间和 SHA-256，内容有变化时解析状态重置为未解析
+     * @param file 已写入的本地数据文件
+     * @param version 数据版本
+     * @throws IOException 读取文件失败
+     */
+    public static void recordDownload(String sourceName, String url, String etag, String lastModified,
+                                      Path file, String version) throws IOException {
+        recordDownload(sourceName, url, etag, lastModified, file, version, sha256(file));
+    }
+
+    /**
+     * 记录一次成功下载并保存清单（SHA-256 已知时使用）
+     * @param file 已写入的本地数据文件
+     * @param version 数据版本
+     * @param sha256 文件内容的 SHA-256（十六进制）
+     * @throws IOException 读取文件属性失败
+     */
+    public static void recordDownload(String sourceName, String url, String etag, String lastModified,
+                                      Path file, String version, String sha256) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Entry entry = new Entry(url, etag, lastModified, version);
+        entry.size = attributes.size();
+        entry.modifiedAt = attributes.lastModifiedTime().toMillis();
+        entry.sha256 = sha256;
+        entry.downloadedAt = System.currentTimeMillis();
+        synchronized (DataManifestService.class) {
+            // 内容没有变化时沿用之前的解析状态
+            Entry previous = entries().get(sourceName);
+            if (previous != null && sha256 != null && sha256.equals(previous.sha256)) {
+                entry.parseStatus = previous.parseStatus;
+                entry.parseError = previous.parseError;
+            }
+            entries().put(sourceName, entry);
+            save();
+        }
+    }
+
+    /**
+     * 获取本地数据文件的版本：清单中有记录且文件大小和修改时间一致时直接返回记录的版本
+     * @param file 本地数据文件
+     * @return 版本；没有记录、记录已过期或文件不存在时返回 null
+     */
+    public static String getVersion(Path file) {
+        Entry entry = getValidEntry(file);
+        return entry != null ? entry.getVersion() : null;
+    }
+
+    /**
+     * 获取仍然描述磁盘上文件的清单记录（只读取文件属性，不读取内容）
+     * @param file 本地数据文件
+     * @return 记录；没有记录、记录已过期或文件不存在时返回 null
+     */
+    public static Entry getValidEntry(Path file) {
+        String sourceName = getSourceName(file);
+        Entry entry = sourceName != null ? getEntry(sourceName) : null;
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return entry.describes(Files.readAttributes(file, BasicFileAttributes.class)) ? entry : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 记录数据文件的解析结果
+     * @param file 本地数据文件
+     * @param error 解析失败的原因，成功时为 null
+     */
+    public static synchronized void recordParseResult(Path file, String error) {
+        String sourceName = getSourceName(file);
+        Entry entry = sourceName != null ? entries().get(sourceName) : null;
+        if (entry == null) {
+            return;
+        }
+        String status = error == null ? PARSE_OK : PARSE_FAILED;
+        if (!status.equals(entry.parseStatus) || !Objects.equals(error, entry.parseError)) {
+            entry.parseStatus = status;
+            entry.parseError = error;
+            save();
+        }
+    }
+
+    /**
+     * 计算文件内容的 SHA-256
+     * @return 十六进制字符串
+     */
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest = newSha256();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 创建 SHA-256 摘要
+     */
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // 所有 Java 平台都必须支持 SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 本地数据文件对应的数据源名称（config/toriifind/<name>.json）
+     * @return 数据源名称，不是本地数据文件时返回 null
+     */
+    private static String getSourceName(Path file) {
+        Path normalized = file.toAbsolutePath().normalize();
+        Path dataDir = LocalDataService.getLocalDataDir().toAbsolutePath().normalize();
+        String fileName = normalized.getFileName().toString();
+        if (!dataDir.equals(normalized.getParent()) || !fileName.endsWith(".json")) {
+            return null;
+        }
+        return fileName.substring(0, fileName.length() - ".json".length());
+    }
+
+    /**
+     * 删除数据源的记录（本地文件丢失时调用）
+     */
+    public static synchronized void remove(String sourceName) {
+        if (entries().remove(sourceName) != null) {
+            save();
+        }
+    }
+
+    private static Map<String, Entry> entries() {
+        if (entries == null) {
+            entries = load();
+        }
+        return entries;
+    }
+
+    private static Map<String, Entry> load() {
+        Path file = getManifestFile();
+        if (Files.exists(file)) {
+            Map<String, Entry> loaded = read(file);
+            if (loaded != null) {
+                return loaded;
+            }
+        } else if (Files.exists(getLegacyManifestFile())) {
+            // 迁移旧位置的清单；解析不了说明这是名为 manifest 的数据源的数据文件，保留不动
+            Map<String, Entry> loaded = read(getLegacyManifestFile());
+            if (loaded != null) {
+                entries = loaded;
+                save();
+                try {
+                    Files.deleteIfExists(getLegacyManifestFile());
+                } catch (IOException ignored) {
+                }
+                return loaded;
+            }
+        }
+        return new LinkedHashMap<>();
+    }
+
+    private static Map<String, Entry> read(Path file) {
+        try (Reader reader = Files.newBufferedReader(file)) {
+            return GSON.fromJson(reader, MAP_TYPE);
+        } catch (Exception e) {
+            System.err.println("[ToriiFind] 读取数据清单失败，将重新生成: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void save() {
+        Path file = getManifestFile();
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer writer = Files.newBufferedWriter(tempFile)) {
+                GSON.toJson(entries, MAP_TYPE, writer);
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("[ToriiFind] 保存数据清单失败: " + e.getMessage());
+        }
+    }
+}
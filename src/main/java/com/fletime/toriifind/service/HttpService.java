@@ -0,0 +1,576 @@
+package com.fletime.toriifind.service;
+
+import com.fletime.toriifind.ToriiFind;
+import com.fletime.toriifind.config.SourceConfig;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 共享的 HTTP 客户端。
+ * 所有网络请求都通过同一个 {@link HttpClient} 发出，复用 keep-alive 连接，
+ * 同一主机的请求在 HTTP/2 下多路复用，响应支持 gzip 压缩。
+ */
+public class HttpService {
+    private static final String USER_AGENT = "ToriiFind-Mod/1.0";
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .connectTimeout(Duration.ofSeconds(10))
+        .executor(TaskExecutorService.io())
+        .build();
+
+    /**
+     * 请求类型，决定默认超时时间（从发出请求到收到响应头）
+     */
+    public enum RequestKind {
+        /** 完整数据文件下载 */
+        DOWNLOAD(Duration.ofSeconds(15)),
+        /** Lynn API 查询和配置文件 */
+        API(Duration.ofSeconds(5)),
+        /** 数据源和镜像可用性检测 */
+        PROBE(Duration.ofSeconds(2)),
+        /** 版本号检测 */
+        VERSION(Duration.ofMillis(1500));
+
+        private final Duration timeout;
+
+        RequestKind(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        public Duration getTimeout() { return timeout; }
+    }
+
+    /**
+     * 创建 GET 请求，已设置 User-Agent、gzip 和超时。
+     * 超时根据该主机最近的响应时间自适应调整，没有足够记录时使用请求类型的默认超时
+     * @param url 请求地址
+     * @param kind 请求类型
+     * @return 请求构建器，可继续添加请求头
+     */
+    public static HttpRequest.Builder request(String url, RequestKind kind) {
+        return request(url, MirrorScoreService.timeoutFor(url, kind.getTimeout()));
+    }
+
+    /**
+     * 创建 GET 请求，使用指定的超时
+     */
+    public static HttpRequest.Builder request(String url, Duration timeout) {
+        return HttpRequest.newBuilder(URI.create(url))
+            .timeout(timeout)
+            .header("User-Agent", USER_AGENT)
+            .header("Accept-Encoding", "gzip")
+            .GET();
+    }
+
+    /**
+     * 创建只读取前若干字节的请求（分段请求不使用 gzip，避免截断压缩流）
+     * @param length 读取的字节数
+     */
+    public static HttpRequest.Builder rangeRequest(String url, RequestKind kind, int length) {
+        return request(url, kind)
+            .setHeader("Accept-Encoding", "identity")
+            .header("Range", "bytes=0-" + (length - 1));
+    }
+
+    /**
+     * 同步发送请求
+     * @return 响应，响应体需要通过 {@link #body(HttpResponse)} 读取
+     * @throws IOException 网络异常或超时
+     */
+    public static HttpResponse<InputStream> send(HttpRequest request) throws IOException {
+        if (!CircuitBreakerService.allowRequest(request.uri().toString())) {
+            // 主机熔断中，直接失败而不是等待超时
+            throw new IOException(CircuitBreakerService.describeOpen(request.uri().toString()));
+        }
+        long startTime = System.nanoTime();
+        try {
+            HttpResponse<InputStream> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            recordResult(request, startTime, response, null);
+            return response;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("请求被中断: " + request.uri());
+        } catch (IOException e) {
+            recordResult(request, startTime, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 异步发送请求（取消返回的 future 会中止请求）
+     */
+    public static CompletableFuture<HttpResponse<InputStream>> sendAsync(HttpRequest request) {
+        return sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    /**
+     * 异步发送请求并读取完整响应体为 UTF-8 字符串（按 Content-Encoding 解压 gzip）。
+     * 响应体由 HttpClient 自身的线程接收，等待期间不占用调用方或线程池的线程
+     */
+    public static CompletableFuture<HttpResponse<String>> sendAsyncString(HttpRequest request) {
+        return sendAsync(request, responseInfo -> {
+            String encoding = responseInfo.headers().firstValue("Content-Encoding").orElse("");
+            if ("gzip".equalsIgnoreCase(encoding)) {
+                return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), HttpService::gunzip);
+            }
+            return HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+        });
+    }
+
+    private static <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        if (!CircuitBreakerService.allowRequest(request.uri().toString())) {
+            return CompletableFuture.failedFuture(new IOException(CircuitBreakerService.describeOpen(request.uri().toString())));
+        }
+        long startTime = System.nanoTime();
+        CompletableFuture<HttpResponse<T>> future = CLIENT.sendAsync(request, bodyHandler);
+        future.whenComplete((response, error) -> recordResult(request, startTime, response, error));
+        return future;
+    }
+
+    private static String gunzip(byte[] bytes) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 熔断器的后台探测：绕过熔断检查发送一次请求，收到非 5xx 响应即视为恢复
+     */
+    static boolean probe(String url) {
+        HttpRequest request = request(url, RequestKind.PROBE)
+            .setHeader("Accept-Encoding", "identity")
+            .header("Range", "bytes=0-0")
+            .build();
+        long startTime = System.nanoTime();
+        try {
+            HttpResponse<InputStream> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            discard(response);
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            boolean success = response.statusCode() < 500 && response.statusCode() != 429;
+            MirrorScoreService.record(url, elapsed, success);
+            return success;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (IOException e) {
+            MirrorScoreService.record(url, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), false);
+            return false;
+        }
+    }
+
+    /**
+     * 把请求结果计入镜像评分和熔断器：5xx、429 和网络异常算失败。
+     * 被取消的请求（如对冲中落败的镜像）不记录：取消时的耗时只是下限，计入会让慢镜像的延迟估计偏低
+     */
+    private static void recordResult(HttpRequest request, long startTime, HttpResponse<?> response, Throwable error) {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        String url = request.uri().toString();
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof CancellationException) {
+            return;
+        }
+        boolean success = error == null && response.statusCode() < 500 && response.statusCode() != 429;
+        MirrorScoreService.record(url, elapsed, success);
+        if (success) {
+            CircuitBreakerService.recordSuccess(url);
+        } else {
+            CircuitBreakerService.recordFailure(url);
+        }
+    }
+
+    /**
+     * 获取响应体，按 Content-Encoding 自动解压 gzip，读取有超时
+     */
+    public static InputStream body(HttpResponse<InputStream> response) throws IOException {
+        return decode(response.body(), response);
+    }
+
+    /**
+     * 按响应的 Content-Encoding 解压响应体，并为每次读取加上超时。
+     * HttpRequest 的超时只覆盖等待响应头，这里沿用同一时长作为读取超时
+     */
+    private static InputStream decode(InputStream in, HttpResponse<?> response) throws IOException {
+        Duration readTimeout = response.request().timeout().orElse(RequestKind.DOWNLOAD.getTimeout());
+        in = new ReadTimeoutInputStream(in, readTimeout);
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if ("gzip".equalsIgnoreCase(encoding)) {
+            return new GZIPInputStream(in);
+        }
+        return in;
+    }
+
+    /**
+     * 读取完整响应体为 UTF-8 字符串
+     */
+    public static String bodyAsString(HttpResponse<InputStream> response) throws IOException {
+        try (InputStream in = body(response)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 最多读取响应体的前 length 字节（用于从文件开头读取版本号）
+     */
+    public static String bodyPrefix(HttpResponse<InputStream> response, int length) throws IOException {
+        try (InputStream in = body(response)) {
+            byte[] bytes = in.readNBytes(length);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 单次读取超过期限仍未返回时关闭底层流，并让该次读取抛出 {@link HttpTimeoutException}，
+     * 相当于 HttpURLConnection 的 setReadTimeout。只计算阻塞在读取上的时间，调用方处理数据的时间不算
+     */
+    private static class ReadTimeoutInputStream extends FilterInputStream {
+        private final long timeoutNanos;
+        private volatile long readStart;
+        private volatile boolean reading;
+        private volatile boolean timedOut;
+        private volatile boolean done;
+
+        ReadTimeoutInputStream(InputStream in, Duration timeout) {
+            super(in);
+            this.timeoutNanos = timeout.toNanos();
+            watch(timeoutNanos);
+        }
+
+        private void watch(long delayNanos) {
+            TaskExecutorService.delayed(Math.max(1, delayNanos), TimeUnit.NANOSECONDS).execute(this::check);
+        }
+
+        private void check() {
+            if (done) {
+                return;
+            }
+            long waited = reading ? System.nanoTime() - readStart : 0;
+            if (waited < timeoutNanos) {
+                watch(timeoutNanos - waited);
+                return;
+            }
+            timedOut = true;
+            try {
+                close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void begin() throws IOException {
+            if (timedOut) {
+                throw timeout();
+            }
+            readStart = System.nanoTime();
+            reading = true;
+        }
+
+        private int end(int result) throws IOException {
+            // 被关闭唤醒的读取会返回 -1，不能当作响应体结束
+            if (timedOut) {
+                throw timeout();
+            }
+            if (result < 0) {
+                // 已读完，不再需要计时
+                done = true;
+            }
+            return result;
+        }
+
+        private HttpTimeoutException timeout() {
+            return new HttpTimeoutException("读取响应体超过 " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms 未收到数据");
+        }
+
+        @Override
+        public int read() throws IOException {
+            begin();
+            int result;
+            try {
+                result = super.read();
+            } catch (IOException e) {
+                throw timedOut ? timeout() : e;
+            } finally {
+                reading = false;
+            }
+            return end(result);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            begin();
+            int result;
+            try {
+                result = super.read(b, off, len);
+            } catch (IOException e) {
+                throw timedOut ? timeout() : e;
+            } finally {
+                reading = false;
+            }
+            return end(result);
+        }
+
+        @Override
+        public void close() throws IOException {
+            done = true;
+            super.close();
+        }
+    }
+
+    /**
+     * 丢弃响应体并释放连接
+     */
+    public static void discard(HttpResponse<InputStream> response) {
+        try {
+            response.body().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * 对冲请求的结果：最先成功响应的地址、响应及已收到首字节的响应体
+     */
+    public static class HedgedResponse {
+        private final String url;
+        private final HttpResponse<InputStream> response;
+        private final InputStream body;
+
+        public HedgedResponse(String url, HttpResponse<InputStream> response, InputStream body) {
+            this.url = url;
+            this.response = response;
+            this.body = body;
+        }
+
+        public String getUrl() { return url; }
+        public HttpResponse<InputStream> getResponse() { return response; }
+
+        /**
+         * 解压后的响应体，使用后需要关闭
+         */
+        public InputStream getBody() throws IOException {
+            return decode(body, response);
+        }
+    }
+
+    /**
+     * 获取配置的对冲延迟
+     */
+    public static Duration getHedgeDelay() {
+        SourceConfig config = ToriiFind.getSourceConfig();
+        return Duration.ofMillis(config != null ? Math.max(0, config.getHedgeDelayMs()) : 1500);
+    }
+
+    /**
+     * 对冲请求：先请求第一个地址，超过 hedgeDelay 仍未收到响应体的首字节（或请求失败）时并行请求下一个地址，
+     * 使用最先收到首字节的可接受响应，其余请求会被取消。
+     * 每个请求只会启动一次下一个地址：失败时立即启动，否则由该请求自己的计时器启动，
+     * 因此前面的请求失败不会缩短后面镜像的对冲延迟。
+     * 每个地址从发出请求起超过请求类型的超时仍未收到首字节时算作失败（HttpRequest 的超时只覆盖响应头），
+     * 整个对冲请求也有总期限，到期时中止所有仍在进行的请求。
+     * @param urls 按优先级排列的地址
+     * @param requestFactory 为每个地址创建请求
+     * @param accept 可接受的状态码
+     * @param hedgeDelay 启动下一个请求前等待的时间
+     * @param kind 请求类型，决定等待首字节的期限
+     * @return 最先成功的地址和响应
+     * @throws IOException 所有地址都失败或超过期限
+     */
+    public static HedgedResponse sendHedged(List<String> urls, Function<String, HttpRequest> requestFactory,
+                                            IntPredicate accept, Duration hedgeDelay, RequestKind kind) throws IOException {
+        if (urls.isEmpty()) {
+            throw new IOException("没有可用的地址");
+        }
+
+        CompletableFuture<HedgedResponse> winner = new CompletableFuture<>();
+        List<CompletableFuture<HttpResponse<InputStream>>> attempts = new CopyOnWriteArrayList<>();
+        // 已收到响应头的请求，未胜出的在结束时关闭（也会唤醒仍在等待首字节的读取）
+        List<HttpResponse<InputStream>> responses = new CopyOnWriteArrayList<>();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicReference<Throwable> lastError = new AtomicReference<>();
+        Executor hedgeTimer = TaskExecutorService.delayed(hedgeDelay.toMillis(), TimeUnit.MILLISECONDS);
+
+        Runnable launchNext = new Runnable() {
+            @Override
+            public void run() {
+                if (winner.isDone()) {
+                    return;
+                }
+                int index = next.getAndIncrement();
+                if (index >= urls.size()) {
+                    return;
+                }
+                String url = urls.get(index);
+                // 本请求是否已经启动过下一个地址（失败或计时器到期，二者只生效一次）
+                AtomicBoolean advanced = new AtomicBoolean();
+                Runnable advance = () -> {
+                    if (advanced.compareAndSet(false, true)) {
+                        run();
+                    }
+                };
+
+                CompletableFuture<HttpResponse<InputStream>> attempt;
+                try {
+                    attempt = sendAsync(requestFactory.apply(url));
+                } catch (Exception e) {
+                    attempt = CompletableFuture.failedFuture(e);
+                }
+                attempts.add(attempt);
+
+                // 首字节期限：到期时还没读到首字节就关闭响应体，唤醒等待中的读取并算作失败。
+                // settled 保证期限和首字节只有先到的一方生效
+                Duration firstByteTimeout = MirrorScoreService.timeoutFor(url, kind.getTimeout());
+                AtomicBoolean settled = new AtomicBoolean();
+                AtomicReference<HttpResponse<InputStream>> received = new AtomicReference<>();
+                TaskExecutorService.delayed(firstByteTimeout.toMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+                    if (settled.compareAndSet(false, true)) {
+                        HttpResponse<InputStream> response = received.get();
+                        if (response != null) {
+                            discard(response);
+                        }
+                    }
+                });
+
+                attempt.whenComplete((response, error) -> {
+                    if (error == null && accept.test(response.statusCode())) {
+                        responses.add(response);
+                        received.set(response);
+                        if (settled.get()) {
+                            // 期限已过才收到响应头
+                            discard(response);
+                            fail(firstByteTimeout(url, firstByteTimeout), advance);
+                            return;
+                        }
+                        // 等待响应体首字节：只返回了响应头的慢镜像不算响应
+                        TaskExecutorService.runIo(() -> {
+                            PushbackInputStream body = new PushbackInputStream(response.body());
+                            IOException readError = null;
+                            try {
+                                int first = body.read();
+                                if (first >= 0) {
+                                    body.unread(first);
+                                }
+                            } catch (IOException e) {
+                                readError = e;
+                            }
+                            if (!settled.compareAndSet(false, true)) {
+                                // 读取是被期限关闭响应体唤醒的
+                                readError = firstByteTimeout(url, firstByteTimeout);
+                            }
+                            if (readError != null) {
+                                discard(response);
+                                fail(readError, advance);
+                                return;
+                            }
+                            if (!winner.complete(new HedgedResponse(url, response, body))) {
+                                discard(response);
+                            }
+                        });
+                        return;
+                    }
+                    if (response != null) {
+                        discard(response);
+                        fail(new IOException("HTTP " + response.statusCode() + " (" + url + ")"), advance);
+                    } else {
+                        fail(error, advance);
+                    }
+                });
+                if (index + 1 < urls.size()) {
+                    hedgeTimer.execute(advance);
+                }
+            }
+
+            private void fail(Throwable error, Runnable advance) {
+                lastError.set(error);
+                if (failed.incrementAndGet() >= urls.size()) {
+                    Throwable cause = lastError.get();
+                    winner.completeExceptionally(cause instanceof IOException ? cause : new IOException(cause));
+                } else {
+                    // 失败时立即尝试下一个地址，不必等待对冲延迟
+                    advance.run();
+                }
+            }
+        };
+        launchNext.run();
+
+        // 总期限：最后一个地址最晚在 (地址数 - 1) 个对冲延迟后启动，再加上它的首字节期限
+        long deadlineMs = hedgeDelay.toMillis() * (urls.size() - 1) + kind.getTimeout().toMillis() * 2;
+        try {
+            HedgedResponse result = winner.get(deadlineMs, TimeUnit.MILLISECONDS);
+            for (CompletableFuture<HttpResponse<InputStream>> attempt : attempts) {
+                attempt.cancel(true);
+            }
+            for (HttpResponse<InputStream> response : responses) {
+                if (response != result.getResponse()) {
+                    discard(response);
+                }
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            attempts.forEach(attempt -> attempt.cancel(true));
+            responses.forEach(HttpService::discard);
+            throw new InterruptedIOException("请求被中断");
+        } catch (TimeoutException e) {
+            winner.cancel(true);
+            attempts.forEach(attempt -> attempt.cancel(true));
+            responses.forEach(HttpService::discard);
+            throw new HttpTimeoutException("超过 " + deadlineMs + " ms 仍未收到数据");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private static HttpTimeoutException firstByteTimeout(String url, Duration timeout) {
+        return new HttpTimeoutException("超过 " + timeout.toMillis() + " ms 未收到数据 (" + url + ")");
+    }
+
+    /**
+     * 发送 GET 请求并检查状态码为 200
+     * @return 响应
+     * @throws IOException 网络异常或状态码不是 200
+     */
+    public static HttpResponse<InputStream> get(String url, RequestKind kind) throws IOException {
+        HttpResponse<InputStream> response = send(request(url, kind).build());
+        if (response.statusCode() != 200) {
+            discard(response);
+            throw new IOException("HTTP " + response.statusCode());
+        }
+        return response;
+    }
+}
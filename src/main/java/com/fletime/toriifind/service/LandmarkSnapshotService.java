@@ -0,0 +1,215 @@
+package com.fletime.toriifind.service;
+
+import com.fletime.toriifind.search.LandmarkIndex;
+import com.fletime.toriifind.service.LynnApiService.LynnLandmark;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 地标数据快照缓存。
+ * 每个数据文件只解析一次，生成不可变快照；文件被重新下载或 mtime/大小变化时才重新解析。
+ * 解析结果同时保存为二进制快照文件，重启后可直接读取（见 {@link BinarySnapshotService}）。
+ */
+public class LandmarkSnapshotService {
+
+    public static class Snapshot {
+        private final LandmarkIndex zerothIndex;
+        private final LandmarkIndex houtuIndex;
+        private volatile LandmarkIndex allIndex;
+        private final String version;
+        private final long fileSize;
+        private final long lastModified;
+
+        public Snapshot(String version, List<LynnLandmark> zeroth, List<LynnLandmark> houtu, long fileSize, long lastModified) {
+            this.version = version;
+            // 拼音等索引在快照创建时一次性构建
+            this.zerothIndex = LandmarkIndex.build(zeroth);
+            this.houtuIndex = LandmarkIndex.build(houtu);
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * 使用已构建好的索引创建快照（从二进制快照文件读取时使用）
+         */
+        public Snapshot(String version, LandmarkIndex zerothIndex, LandmarkIndex houtuIndex, long fileSize, long lastModified) {
+            this.version = version;
+            this.zerothIndex = zerothIndex;
+            this.houtuIndex = houtuIndex;
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+        }
+
+        public List<LynnLandmark> getZeroth() { return zerothIndex.getLandmarks(); }
+        public List<LynnLandmark> getHoutu() { return houtuIndex.getLandmarks(); }
+        public List<LynnLandmark> getAll() { return getAllIndex().getLandmarks(); }
+        public LandmarkIndex getZerothIndex() { return zerothIndex; }
+        public LandmarkIndex getHoutuIndex() { return houtuIndex; }
+
+        /**
+         * 零洲和后土合并后的索引，只在需要时构建（复用已计算的拼音）
+         */
+        public LandmarkIndex getAllIndex() {
+            LandmarkIndex index = allIndex;
+            if (index == null) {
+                synchronized (this) {
+                    index = allIndex;
+                    if (index == null) {
+                        index = LandmarkIndex.concat(zerothIndex, houtuIndex);
+                        allIndex = index;
+                    }
+                }
+            }
+            return index;
+        }
+        public String getVersion() { return version; }
+        public long getFileSize() { return fileSize; }
+        public long getLastModified() { return lastModified; }
+    }
+
+    /**
+     * 某个文件版本（大小和修改时间）的快照，加载中或已加载完成
+     */
+    private static class Load {
+        private final long fileSize;
+        private final long lastModified;
+        private final CompletableFuture<Snapshot> snapshot = new CompletableFuture<>();
+
+        Load(BasicFileAttributes attributes) {
+            this.fileSize = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+        }
+
+        private boolean matches(BasicFileAttributes attributes) {
+            return attributes.size() == fileSize && attributes.lastModifiedTime().toMillis() == lastModified;
+        }
+    }
+
+    private static final Map<Path, Load> CACHE = new ConcurrentHashMap<>();
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    /**
+     * 获取数据源对应的快照（local 使用 toriifind.json，其它优先使用本地下载的文件）
+     * @param sourceName 数据源名称
+     * @return 快照
+     * @throws IOException 读取异常
+     */
+    public static Snapshot getSnapshotForSource(String sourceName) throws IOException {
+        Path configFile = FabricLoader.getInstance().getConfigDir().resolve("toriifind.json");
+        if ("local".equals(sourceName)) {
+            return getSnapshot(configFile);
+        }
+
+        Path localFile = LocalDataService.getLocalDataFile(sourceName);
+        if (Files.exists(localFile)) {
+            try {
+                return getSnapshot(localFile);
+            } catch (Exception e) {
+                System.err.println("[ToriiFind] 读取本地数据失败，尝试从传统配置文件读取: " + e.getMessage());
+            }
+        }
+        return getSnapshot(configFile);
+    }
+
+    /**
+     * 获取指定文件的快照，文件未变化时直接返回缓存
+     * @param file 数据文件
+     * @return 快照
+     * @throws IOException 读取或解析异常
+     */
+    public static Snapshot getSnapshot(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+
+        Load load = CACHE.get(key);
+        if (load == null || !load.matches(attributes)) {
+            // 同一文件并发未命中时只解析一次：map 里只登记加载任务，解析和写快照在锁外进行，
+            // 不会阻塞其它文件的读取
+            Load created = new Load(attributes);
+            load = CACHE.compute(key, (path, existing) ->
+                existing != null && existing.matches(attributes) ? existing : created);
+            if (load == created) {
+                MISSES.incrementAndGet();
+                Snapshot snapshot;
+                try {
+                    snapshot = loadSnapshot(key, attributes);
+                } catch (IOException | RuntimeException e) {
+                    // 失败的加载不留在缓存中，下次重新尝试
+                    CACHE.remove(key, created);
+                    created.snapshot.completeExceptionally(e);
+                    throw e;
+                }
+                created.snapshot.complete(snapshot);
+                return snapshot;
+            }
+        }
+
+        HITS.incrementAndGet();
+        try {
+            return load.snapshot.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待快照加载被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static Snapshot loadSnapshot(Path file, BasicFileAttributes attributes) throws IOException {
+        // 优先使用二进制快照，过期或损坏时再解析 JSON 并重新生成
+        Snapshot snapshot = BinarySnapshotService.load(file, attributes);
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        try (Reader reader = Files.newBufferedReader(file)) {
+            LynnJsonService.ParsedData data = LynnJsonService.readLandmarks(reader);
+            snapshot = new Snapshot(data.getVersion(), data.getZeroth(), data.getHoutu(),
+                attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (IOException | RuntimeException e) {
+            DataManifestService.recordParseResult(file, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+            throw e;
+        }
+        DataManifestService.recordParseResult(file, null);
+        BinarySnapshotService.save(file, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * 使指定文件的快照失效（文件被重新写入后调用）
+     */
+    public static void invalidate(Path file) {
+        CACHE.remove(file.toAbsolutePath().normalize());
+    }
+
+    /**
+     * 清空所有快照
+     */
+    public static void invalidateAll() {
+        CACHE.clear();
+    }
+
+    public static long getHitCount() { return HITS.get(); }
+    public static long getMissCount() { return MISSES.get(); }
+    public static int getCachedCount() { return CACHE.size(); }
+}
@@ -1,20 +1,42 @@
 package com.fletime.toriifind.service;
 
+import com.fletime.toriifind.ToriiFind;
 import com.fletime.toriifind.config.SourceConfig;
 import net.fabricmc.loader.api.FabricLoader;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class LocalDataService {
     
+    // 每个 JSON 数据源的初始下载，结束（成功或失败）时完成
+    private static final Map<String, CompletableFuture<Void>> INITIAL_DOWNLOADS = new ConcurrentHashMap<>();
+    // 每个数据源的写入锁：初始下载、检查更新、查询时补下载和离线副本同步都持有它替换本地文件
+    private static final Map<String, ReentrantLock> DOWNLOAD_LOCKS = new ConcurrentHashMap<>();
+    
     /**
      * 获取本地数据目录
      */
@@ -23,6 +45,14 @@ public class LocalDataService {
         return configDir.resolve("toriifind");
     }
     
+    /**
+     * 获取内部状态文件（数据清单、镜像评分）所在的目录。
+     * 数据文件都是数据目录下的 <数据源>.json，放在子目录中的状态文件不会被同名数据源覆盖
+     */
+    public static Path getStateDir() {
+        return getLocalDataDir().resolve("state");
+    }
+    
     /**
      * 获取指定数据源的本地文件路径
      */
@@ -31,73 +61,285 @@ public class LocalDataService {
     }
     
     /**
-     * 初始化所有数据源到本地
+     * 初始化所有数据源到本地。
+     * 各数据源并行下载，同时进行的下载数不超过 downloadConcurrency，
+     * 每个数据源从开始下载起超过 downloadTimeoutSeconds 仍未完成时中止；
+     * 每个数据源下载结束后立即可以查询（见 {@link #whenReady}），不必等待其它数据源
+     * @return 所有数据源都下载结束（成功或失败）时完成
      */
     public static CompletableFuture<Void> initializeAllDataSources(Map<String, SourceConfig.DataSource> sources) {
-        return CompletableFuture.runAsync(() -> {
+        SourceConfig config = ToriiFind.getSourceConfig();
+        return initializeAllDataSources(sources, config.getDownloadConcurrency(), config.getDownloadTimeoutSeconds());
+    }
+    
+    /**
+     * 初始化所有数据源到本地
+     * @param concurrency 同时进行的下载数
+     * @param timeoutSeconds 每个数据源的下载期限（秒），小于等于 0 表示不限制
+     */
+    static CompletableFuture<Void> initializeAllDataSources(Map<String, SourceConfig.DataSource> sources,
+                                                            int concurrency, long timeoutSeconds) {
+        try {
+            // 确保目录存在
+            Files.createDirectories(getLocalDataDir());
+        } catch (IOException e) {
+            System.err.println("[ToriiFind] 数据源初始化失败: " + e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        Semaphore permits = new Semaphore(Math.max(1, concurrency));
+        List<CompletableFuture<Void>> downloads = new ArrayList<>();
+        for (Map.Entry<String, SourceConfig.DataSource> entry : sources.entrySet()) {
+            String sourceName = entry.getKey();
+            SourceConfig.DataSource source = entry.getValue();
+            
+            // 只下载JSON类型的数据源
+            if (!source.isApiMode() && source.getUrl() != null) {
+                CompletableFuture<Void> download = initializeDataSource(sourceName, source, permits, timeoutSeconds);
+                INITIAL_DOWNLOADS.put(sourceName, download);
+                downloads.add(download);
+            }
+        }
+        
+        return CompletableFuture.allOf(downloads.toArray(new CompletableFuture[0]))
+            .thenRun(() -> System.out.println("[ToriiFind] 数据源初始化完成"));
+    }
+    
+    /**
+     * 在 IO 执行器上下载单个数据源，失败或超时只记录日志，返回的 future 总是正常完成
+     */
+    private static CompletableFuture<Void> initializeDataSource(String sourceName, SourceConfig.DataSource source,
+                                                                Semaphore permits, long timeoutSeconds) {
+        return TaskExecutorService.runIo(() -> {
             try {
-                // 确保目录存在
-                Files.createDirectories(getLocalDataDir());
-                
-                for (Map.Entry<String, SourceConfig.DataSource> entry : sources.entrySet()) {
-                    String sourceName = entry.getKey();
-                    SourceConfig.DataSource source = entry.getValue();
-                    
-                    // 只下载JSON类型的数据源
-                    if (!source.isApiMode() && source.getUrl() != null) {
-                        try {
-                            downloadDataSource(sourceName, source);
-                            System.out.println("[ToriiFind] 已下载数据源: " + sourceName);
-                        } catch (Exception e) {
-                            System.err.println("[ToriiFind] 下载数据源失败 " + sourceName + ": " + e.getMessage());
-                            // 尝试镜像URL
-                            if (source.getMirrorUrls() != null) {
-                                for (String mirrorUrl : source.getMirrorUrls()) {
-                                    try {
-                                        downloadFromUrl(mirrorUrl, getLocalDataFile(sourceName));
-                                        System.out.println("[ToriiFind] 通过镜像下载数据源成功: " + sourceName);
-                                        break;
-                                    } catch (Exception me) {
-                                        System.err.println("[ToriiFind] 镜像下载失败: " + me.getMessage());
-                                    }
-                                }
-                            }
-                        }
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            StartupTimelineService.Phase phase = StartupTimelineService.begin("download." + sourceName);
+            // 超过期限时中断下载线程，HTTP 请求和响应体读取都会因中断而失败，临时文件随之删除
+            Thread worker = Thread.currentThread();
+            AtomicBoolean finished = new AtomicBoolean();
+            AtomicBoolean timedOut = new AtomicBoolean();
+            if (timeoutSeconds > 0) {
+                TaskExecutorService.delayed(timeoutSeconds, TimeUnit.SECONDS).execute(() -> {
+                    if (!finished.get() && timedOut.compareAndSet(false, true)) {
+                        worker.interrupt();
                     }
-                }
-                
-                System.out.println("[ToriiFind] 数据源初始化完成");
+                });
+            }
+            try {
+                // 主地址和镜像对冲下载，使用最先响应的地址
+                downloadDataSource(sourceName, source);
+                phase.end();
+                System.out.println("[ToriiFind] 已下载数据源: " + sourceName);
             } catch (Exception e) {
-                System.err.println("[ToriiFind] 数据源初始化失败: " + e.getMessage());
+                String message = timedOut.get() ? "超过 " + timeoutSeconds + " 秒未完成" : e.getMessage();
+                phase.fail(new IOException(message, e));
+                System.err.println("[ToriiFind] 下载数据源失败 " + sourceName + ": " + message);
+            } finally {
+                finished.set(true);
+                // 清除超时留下的中断标记
+                Thread.interrupted();
+                permits.release();
             }
         });
     }
     
     /**
-     * 下载单个数据源
+     * 数据源可以查询时完成：本地文件已存在，或者它的初始下载已经结束（无论成功与否）
+     * @param sourceName 数据源名称
+     * @return 可以查询时完成的 future，不会异常完成
+     */
+    public static CompletableFuture<Void> whenReady(String sourceName) {
+        CompletableFuture<Void> download = INITIAL_DOWNLOADS.get(sourceName);
+        if (download == null || download.isDone() || isLocalDataExists(sourceName)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return download;
+    }
+    
+    /**
+     * 数据源是否可以立即查询（没有正在进行且尚无本地文件的初始下载）
      */
-    public static void downloadDataSource(String sourceName, SourceConfig.DataSource source) throws IOException {
+    public static boolean isReady(String sourceName) {
+        return whenReady(sourceName).isDone();
+    }
+    
+    /**
+     * 下载单个数据源（主地址和镜像对冲下载；本地已有文件时发送条件请求，未变化则不下载）
+     * @return 本地文件是否被更新
+     */
+    public static boolean downloadDataSource(String sourceName, SourceConfig.DataSource source) throws IOException {
         if (source.isApiMode() || source.getUrl() == null) {
-            return;
+            return false;
         }
         
         Path localFile = getLocalDataFile(sourceName);
-        downloadFromUrl(source.getUrl(), localFile);
+        // 同一数据源同时只有一个下载：清单记录的校验信息与替换进去的文件总是对应同一次下载
+        ReentrantLock lock = lockSource(sourceName);
+        try {
+            // 按镜像评分排列，历史上最快最稳定的地址最先请求
+            return downloadFromUrls(sourceName, MirrorScoreService.orderUrls(source.getAllUrls()), localFile);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * 获取数据源的写入锁（可重入），调用方负责 unlock
+     * @throws InterruptedIOException 等待时被中断
+     */
+    static ReentrantLock lockSource(String sourceName) throws InterruptedIOException {
+        ReentrantLock lock = DOWNLOAD_LOCKS.computeIfAbsent(sourceName, key -> new ReentrantLock());
+        try {
+            lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待下载被中断");
+        }
+        return lock;
+    }
+    
+    /**
+     * 从多个地址对冲下载文件。
+     * 清单记录仍与本地文件一致（大小和修改时间相同）且有某个地址的 ETag / Last-Modified 时，对该地址发送条件请求，
+     * 返回 304 则保留本地文件；任一地址返回 200 则直接用响应内容替换本地文件并记录新的校验信息。
+     * @param urls 按优先级排列的地址
+     * @return 本地文件是否被更新
+     */
+    private static boolean downloadFromUrls(String sourceName, List<String> urls, Path targetFile) throws IOException {
+        // 文件被截断或改动过时记录不再可信，不能让服务器用 304 保留损坏的文件
+        DataManifestService.Entry entry = DataManifestService.getValidEntry(targetFile);
+        boolean conditional = entry != null;
+        
+        HttpService.HedgedResponse hedged = HttpService.sendHedged(urls, url -> {
+            HttpRequest.Builder request = HttpService.request(url, HttpService.RequestKind.DOWNLOAD);
+            if (conditional && url.equals(entry.getUrl())) {
+                if (entry.getEtag() != null) {
+                    request.header("If-None-Match", entry.getEtag());
+                }
+                if (entry.getLastModified() != null) {
+                    request.header("If-Modified-Since", entry.getLastModified());
+                }
+            }
+            return request.build();
+        }, status -> status == 200 || status == 304, HttpService.getHedgeDelay(), HttpService.RequestKind.DOWNLOAD);
+        
+        String url = hedged.getUrl();
+        HttpResponse<InputStream> response = hedged.getResponse();
+        if (response.statusCode() == 304) {
+            HttpService.discard(response);
+            return false;
+        }
+        if (!url.equals(urls.get(0))) {
+            System.out.println("[ToriiFind] 数据源 " + sourceName + " 由镜像响应: " + url);
+        }
+        
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+        StagedFile staged;
+        try (InputStream in = hedged.getBody()) {
+            staged = stage(in, targetFile);
+        }
+        
+        // 内容与本地文件相同时不替换文件，快照、索引和二进制快照都保持有效
+        DataManifestService.Entry previous = DataManifestService.getValidEntry(targetFile);
+        if (previous != null && staged.getSha256().equals(previous.getSha256())) {
+            staged.discard();
+            DataManifestService.recordDownload(sourceName, url, etag, lastModified, targetFile, previous.getVersion(), previous.getSha256());
+            System.out.println("[ToriiFind] 数据源 " + sourceName + " 内容未变化，跳过更新");
+            return false;
+        }
+        
+        staged.commit();
+        LandmarkSnapshotService.invalidate(targetFile);
+        DataManifestService.recordDownload(sourceName, url, etag, lastModified,
+            targetFile, readVersion(targetFile), staged.getSha256());
+        return true;
     }
     
     /**
-     * 从URL下载文件
+     * 写入临时文件、尚未替换目标文件的下载内容
      */
-    private static void downloadFromUrl(String url, Path targetFile) throws IOException {
-        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-        conn.setRequestMethod("GET");
-        conn.setConnectTimeout(10000);
-        conn.setReadTimeout(15000);
-        conn.setRequestProperty("User-Agent", "ToriiFind-Mod/1.0");
+    public static class StagedFile {
+        private final Path tempFile;
+        private final Path targetFile;
+        private final String sha256;
+        
+        private StagedFile(Path tempFile, Path targetFile, String sha256) {
+            this.tempFile = tempFile;
+            this.targetFile = targetFile;
+            this.sha256 = sha256;
+        }
         
-        try (InputStream in = conn.getInputStream()) {
-            Files.copy(in, targetFile, StandardCopyOption.REPLACE_EXISTING);
+        /** 内容的 SHA-256（十六进制） */
+        public String getSha256() { return sha256; }
+        
+        /**
+         * 以原子移动替换目标文件，读取方只会看到旧文件或完整的新文件
+         */
+        public void commit() throws IOException {
+            try {
+                Files.move(tempFile, targetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, targetFile, StandardCopyOption.REPLACE_EXISTING);
+            }
         }
+        
+        /**
+         * 放弃下载内容，保留目标文件
+         */
+        public void discard() throws IOException {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+    
+    /**
+     * 把内容写入目标文件旁的临时文件，写入的同时计算 SHA-256，不需要再读一遍文件。
+     * 每次使用新的临时文件名，同时进行的写入不会互相覆盖；写入失败时删除临时文件，目标文件保持不变
+     * @param in 内容
+     * @param targetFile 目标文件
+     * @return 待提交的下载内容
+     * @throws IOException 读取或写入异常
+     */
+    public static StagedFile stage(InputStream in, Path targetFile) throws IOException {
+        Path tempFile = Files.createTempFile(targetFile.getParent(), targetFile.getFileName().toString(), ".tmp");
+        MessageDigest digest = DataManifestService.newSha256();
+        try (InputStream digestIn = new DigestInputStream(in, digest)) {
+            Files.copy(digestIn, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return new StagedFile(tempFile, targetFile, HexFormat.of().formatHex(digest.digest()));
+    }
+    
+    /**
+     * 确保数据源的本地文件存在：不存在时下载到本地数据文件。
+     * 同一数据源的并发调用只下载一次，其余调用等待下载结束后直接使用同一个文件
+     * @return 本地文件
+     * @throws IOException 下载失败
+     */
+    public static Path ensureLocalData(String sourceName, SourceConfig.DataSource source) throws IOException {
+        Path localFile = getLocalDataFile(sourceName);
+        if (Files.exists(localFile)) {
+            return localFile;
+        }
+        ReentrantLock lock = lockSource(sourceName);
+        try {
+            if (!Files.exists(localFile)) {
+                Files.createDirectories(getLocalDataDir());
+                downloadDataSource(sourceName, source);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!Files.exists(localFile)) {
+            throw new IOException("数据源 " + sourceName + " 没有可用的本地文件");
+        }
+        return localFile;
     }
     
     /**
@@ -117,8 +359,6 @@ public class LocalDataService {
                     return false;
                 }
                 
-                // 检查远程版本
-                String remoteVersion = getRemoteVersion(source.getUrl());
                 Path localFile = getLocalDataFile(sourceName);
                 
                 if (!Files.exists(localFile)) {
@@ -127,6 +367,19 @@ public class LocalDataService {
                     return true;
                 }
                 
+                DataManifestService.Entry entry = DataManifestService.getEntry(sourceName);
+                if (entry != null && Arrays.asList(source.getAllUrls()).contains(entry.getUrl()) && entry.hasValidators()) {
+                    // 条件请求：未变化时只有一个 304 响应，变化时直接使用响应内容更新本地文件
+                    boolean updated = downloadDataSource(sourceName, source);
+                    if (updated) {
+                        System.out.println("[ToriiFind] 已更新数据源: " + sourceName + " 版本: " + getLocalVersion(localFile));
+                    }
+                    return updated;
+                }
+                
+                // 服务器没有提供 ETag / Last-Modified 时，读取前 2KB 比较版本
+                String remoteVersion = getRemoteVersion(MirrorScoreService.orderUrls(source.getAllUrls()).get(0));
+                
                 // 比较版本
                 String localVersion = getLocalVersion(localFile);
                 if (remoteVersion != null && !remoteVersion.equals(localVersion)) {
@@ -141,7 +394,7 @@ public class LocalDataService {
                 System.err.println("[ToriiFind] 检查更新失败 " + sourceName + ": " + e.getMessage());
                 return false;
             }
-        });
+        }, TaskExecutorService.io());
     }
     
     /**
@@ -149,21 +402,15 @@ public class LocalDataService {
      */
     private static String getRemoteVersion(String url) {
         try {
-            HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(5000);
-            conn.setReadTimeout(5000);
-            conn.setRequestProperty("Range", "bytes=0-2047"); // 读取更多内容以确保找到正确的version字段
+            // 读取前2KB以确保找到正确的version字段
+            HttpResponse<InputStream> response = HttpService.send(
+                HttpService.rangeRequest(url, HttpService.RequestKind.API, 2048).build());
             
-            if (conn.getResponseCode() == 200 || conn.getResponseCode() == 206) {
-                try (InputStream in = conn.getInputStream()) {
-                    byte[] buffer = new byte[2048];
-                    int bytesRead = in.read(buffer);
-                    String content = new String(buffer, 0, bytesRead, java.nio.charset.StandardCharsets.UTF_8);
-                    
-                    return extractRootVersion(content);
-                }
+            if (response.statusCode() == 200 || response.statusCode() == 206) {
+                // version 位于前 2KB 内时流式读取到它即返回，之后被截断的内容不会被解析
+                return LynnJsonService.readRootVersion(new StringReader(HttpService.bodyPrefix(response, 2048)));
             }
+            HttpService.discard(response);
         } catch (Exception e) {
             // 忽略版本检查错误
         }
@@ -171,85 +418,26 @@ public class LocalDataService {
     }
     
     /**
-     * 获取本地文件版本号
+     * 获取本地文件版本号：优先从数据清单读取（只检查文件大小和修改时间），
+     * 清单中没有有效记录时（例如内置的 toriifind.json）流式读取根级别的 version
      */
     public static String getLocalVersion(Path localFile) {
-        try {
-            byte[] buffer = new byte[2048];
-            try (InputStream in = Files.newInputStream(localFile)) {
-                int bytesRead = in.read(buffer);
-                String content = new String(buffer, 0, bytesRead, java.nio.charset.StandardCharsets.UTF_8);
-                
-                return extractRootVersion(content);
-            }
-        } catch (Exception e) {
-            // 忽略版本读取错误
+        String version = DataManifestService.getVersion(localFile);
+        if (version != null) {
+            return version;
         }
-        return null;
+        return readVersion(localFile);
     }
     
     /**
-     * 从JSON内容中提取根级别的version字段
+     * 流式读取文件根级别的 version 字段，读到后立即停止
      */
-    private static String extractRootVersion(String content) {
-        try {
-            // 使用Gson解析JSON以确保只获取根级别的version
-            com.google.gson.JsonObject jsonObject = com.google.gson.JsonParser.parseString(content).getAsJsonObject();
-            if (jsonObject.has("version")) {
-                com.google.gson.JsonElement versionElement = jsonObject.get("version");
-                if (versionElement.isJsonPrimitive()) {
-                    // 处理数字或字符串类型的版本号
-                    return versionElement.getAsString();
-                }
-            }
+    private static String readVersion(Path file) {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return LynnJsonService.readRootVersion(reader);
         } catch (Exception e) {
-            // JSON解析失败，使用简单字符串匹配作为fallback
-            // 查找 "version": 在JSON开头附近，避免获取嵌套对象中的version
-            int jsonStart = content.indexOf("{");
-            if (jsonStart >= 0) {
-                // 只在JSON开始后的前500个字符内查找
-                String jsonHead = content.substring(jsonStart, Math.min(content.length(), jsonStart + 500));
-                
-                if (jsonHead.contains("\"version\"")) {
-                    int versionIndex = jsonHead.indexOf("\"version\":");
-                    // 确保这个version在第一层级（检查前面是否有嵌套的大括号）
-                    String beforeVersion = jsonHead.substring(0, versionIndex);
-                    long openBraces = beforeVersion.chars().filter(ch -> ch == '{').count();
-                    long closeBraces = beforeVersion.chars().filter(ch -> ch == '}').count();
-                    
-                    // 如果大括号平衡，说明我们在根级别
-                    if (openBraces == closeBraces + 1) {
-                        int valueStart = versionIndex + 10; // "version":的长度
-                        // 跳过空格和冒号
-                        while (valueStart < jsonHead.length() && (jsonHead.charAt(valueStart) == ' ' || jsonHead.charAt(valueStart) == ':')) {
-                            valueStart++;
-                        }
-                        
-                        if (valueStart < jsonHead.length()) {
-                            char firstChar = jsonHead.charAt(valueStart);
-                            if (firstChar == '"') {
-                                // 字符串版本号
-                                int start = valueStart + 1;
-                                int end = jsonHead.indexOf("\"", start);
-                                if (end > start) {
-                                    return jsonHead.substring(start, end);
-                                }
-                            } else if (Character.isDigit(firstChar)) {
-                                // 数字版本号
-                                int end = valueStart;
-                                while (end < jsonHead.length() && 
-                                       (Character.isDigit(jsonHead.charAt(end)) || jsonHead.charAt(end) == '.')) {
-                                    end++;
-                                }
-                                if (end > valueStart) {
-                                    return jsonHead.substring(valueStart, end);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+            // 忽略版本读取错误
+            return null;
         }
-        return null;
     }
 }
\ No newline at end of file
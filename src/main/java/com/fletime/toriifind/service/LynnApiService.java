@@ -6,13 +6,19 @@ import com.google.gson.JsonParser;
 import com.fletime.toriifind.config.SourceConfig;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 
 public class LynnApiService {
     
@@ -23,23 +29,60 @@ public class LynnApiService {
         private final String status;
         private final Coordinates coordinates;
         
+        /**
+         * 坐标，加载时解析为数值；任一分量未知（NaN）时视为坐标未知
+         */
         public static class Coordinates {
-            private final String x;
-            private final String y;
-            private final String z;
+            /** 坐标未知（所有未知坐标共享同一个实例） */
+            public static final Coordinates UNKNOWN = new Coordinates(Double.NaN, Double.NaN, Double.NaN);
             
-            public Coordinates(String x, String y, String z) {
+            private final double x;
+            private final double y;
+            private final double z;
+            
+            public Coordinates(double x, double y, double z) {
                 this.x = x;
                 this.y = y;
                 this.z = z;
             }
             
-            public String getX() { return x; }
-            public String getY() { return y; }
-            public String getZ() { return z; }
+            /**
+             * 创建坐标，任一分量为 NaN 时返回 {@link #UNKNOWN}
+             */
+            public static Coordinates of(double x, double y, double z) {
+                if (Double.isNaN(x) || Double.isNaN(y) || Double.isNaN(z)) {
+                    return UNKNOWN;
+                }
+                return new Coordinates(x, y, z);
+            }
+            
+            /**
+             * 从文本解析坐标，"Unknown"、空值或无法解析的分量视为未知
+             */
+            public static Coordinates parse(String x, String y, String z) {
+                return of(parseComponent(x), parseComponent(y), parseComponent(z));
+            }
+            
+            /**
+             * 解析单个坐标分量，无法解析时返回 NaN
+             */
+            public static double parseComponent(String value) {
+                if (value == null || value.isEmpty() || "Unknown".equals(value)) {
+                    return Double.NaN;
+                }
+                try {
+                    return Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    return Double.NaN;
+                }
+            }
+            
+            public double getX() { return x; }
+            public double getY() { return y; }
+            public double getZ() { return z; }
             
             public boolean isUnknown() {
-                return "Unknown".equals(x) || "Unknown".equals(y) || "Unknown".equals(z);
+                return Double.isNaN(x) || Double.isNaN(y) || Double.isNaN(z);
             }
             
             @Override
@@ -47,7 +90,18 @@ public class LynnApiService {
                 if (isUnknown()) {
                     return "坐标未知";
                 }
-                return String.format("(%s, %s, %s)", x, y, z);
+                StringBuilder builder = new StringBuilder(24).append('(');
+                appendComponent(builder, x).append(", ");
+                appendComponent(builder, y).append(", ");
+                return appendComponent(builder, z).append(')').toString();
+            }
+            
+            private static StringBuilder appendComponent(StringBuilder builder, double value) {
+                // 方块坐标通常是整数，省略多余的 ".0"
+                if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                    return builder.append((long) value);
+                }
+                return builder.append(value);
             }
         }
         
@@ -72,7 +126,7 @@ public class LynnApiService {
     }
     
     /**
-     * 通过API搜索landmark
+     * 通过API搜索landmark（结果会被缓存，见 {@link ApiCacheService}）
      * @param apiBaseUrl API基础URL
      * @param source 数据源 (zth 或 houtu)
      * @param name 名称关键字（可选）
@@ -80,6 +134,17 @@ public class LynnApiService {
      * @throws IOException 网络异常
      */
     public static List<LynnLandmark> searchLandmarks(String apiBaseUrl, String source, String name) throws IOException {
+        return await(searchLandmarksAsync(apiBaseUrl, source, name));
+    }
+    
+    /**
+     * 异步搜索landmark，同时进行的相同查询只会发出一次请求
+     * @param apiBaseUrl API基础URL
+     * @param source 数据源 (zth 或 houtu)
+     * @param name 名称关键字（可选）
+     * @return Landmark列表
+     */
+    public static CompletableFuture<List<LynnLandmark>> searchLandmarksAsync(String apiBaseUrl, String source, String name) {
         StringBuilder urlBuilder = new StringBuilder(apiBaseUrl);
         if (!apiBaseUrl.endsWith("/")) {
             urlBuilder.append("/");
@@ -90,12 +155,14 @@ public class LynnApiService {
             urlBuilder.append("&name=").append(URLEncoder.encode(name, StandardCharsets.UTF_8));
         }
         
-        String responseJson = makeHttpRequest(urlBuilder.toString());
-        return parseLandmarksFromJson(responseJson);
+        String url = urlBuilder.toString();
+        String key = ApiCacheService.key(apiBaseUrl, source, "search", name);
+        return ApiCacheService.get(key, () -> SingleFlightService.execute(key,
+            () -> fetchParsedAsync(url, LynnApiService::parseLandmarksFromJson)));
     }
     
     /**
-     * 通过ID获取单个landmark
+     * 通过ID获取单个landmark（结果会被缓存，见 {@link ApiCacheService}）
      * @param apiBaseUrl API基础URL
      * @param source 数据源 (zth 或 houtu)
      * @param landmarkId landmark ID
@@ -103,29 +170,100 @@ public class LynnApiService {
      * @throws IOException 网络异常
      */
     public static LynnLandmark getLandmarkById(String apiBaseUrl, String source, String landmarkId) throws IOException {
+        return await(getLandmarkByIdAsync(apiBaseUrl, source, landmarkId));
+    }
+    
+    /**
+     * 异步获取单个landmark，同时进行的相同查询只会发出一次请求
+     * @param apiBaseUrl API基础URL
+     * @param source 数据源 (zth 或 houtu)
+     * @param landmarkId landmark ID
+     * @return Landmark对象，不存在时为 null
+     */
+    public static CompletableFuture<LynnLandmark> getLandmarkByIdAsync(String apiBaseUrl, String source, String landmarkId) {
         StringBuilder urlBuilder = new StringBuilder(apiBaseUrl);
         if (!urlBuilder.toString().endsWith("/")) {
             urlBuilder.append("/");
         }
         urlBuilder.append("api/landmarks/").append(landmarkId).append("?source=").append(source);
         
-        String responseJson = makeHttpRequest(urlBuilder.toString());
-        List<LynnLandmark> landmarks = parseLandmarksFromJson("[" + responseJson + "]");
-        return landmarks.isEmpty() ? null : landmarks.get(0);
+        String url = urlBuilder.toString();
+        String key = ApiCacheService.key(apiBaseUrl, source, "id", landmarkId);
+        CompletableFuture<List<LynnLandmark>> landmarks = ApiCacheService.get(key, () -> SingleFlightService.execute(key,
+            () -> fetchParsedAsync(url, json -> parseLandmarksFromJson("[" + json + "]"))));
+        return TaskExecutorService.propagateCancel(
+            landmarks.thenApply(list -> list.isEmpty() ? null : list.get(0)), landmarks);
     }
     
-    private static String makeHttpRequest(String urlString) throws IOException {
-        HttpURLConnection conn = (HttpURLConnection) new URL(urlString).openConnection();
-        conn.setRequestMethod("GET");
-        conn.setConnectTimeout(5000);
-        conn.setReadTimeout(5000);
-        conn.setRequestProperty("Accept", "application/json");
-        
-        try (InputStream in = conn.getInputStream()) {
-            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    /**
+     * 获取指定区域的全部地标（离线副本同步使用），不经过缓存
+     * @param apiBaseUrl API基础URL
+     * @param source 数据源 (zth 或 houtu)
+     * @return 全部地标
+     */
+    public static CompletableFuture<List<LynnLandmark>> fetchAllAsync(String apiBaseUrl, String source) {
+        StringBuilder urlBuilder = new StringBuilder(apiBaseUrl);
+        if (!apiBaseUrl.endsWith("/")) {
+            urlBuilder.append("/");
         }
+        urlBuilder.append("api/landmarks?source=").append(source);
+        return fetchParsedAsync(urlBuilder.toString(), json -> {
+            try {
+                return LynnJsonService.readLandmarkList(new StringReader(json));
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+    
+    /**
+     * 请求并解析响应，取消返回的 future 会中止 HTTP 请求
+     */
+    private static <T> CompletableFuture<T> fetchParsedAsync(String urlString, Function<String, T> parser) {
+        CompletableFuture<String> fetch = fetchAsync(urlString);
+        return TaskExecutorService.propagateCancel(fetch.thenApply(parser), fetch);
     }
     
+    private static CompletableFuture<String> fetchAsync(String urlString) {
+        HttpRequest request = HttpService.request(urlString, HttpService.RequestKind.API)
+            .header("Accept", "application/json")
+            .build();
+        // 取消 HttpClient 返回的 future 会中止对应的 HTTP 交换
+        CompletableFuture<HttpResponse<String>> exchange = HttpService.sendAsyncString(request);
+        return TaskExecutorService.propagateCancel(exchange.thenApply(response -> {
+            if (response.statusCode() != 200) {
+                throw new CompletionException(new IOException("HTTP " + response.statusCode()));
+            }
+            return response.body();
+        }), exchange);
+    }
+    
+    /**
+     * 等待异步查询完成，把异常还原为 IOException
+     */
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("查询被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            throw new IOException(cause);
+        }
+    }
+    
+    /**
+     * 解析 API 返回的地标数组。
+     * 格式不正确时抛出异常而不是返回空列表，缓存和合并请求都会把它当作失败，不会缓存错误的结果
+     * @throws CompletionException 包装的 IOException，响应不是预期的地标数组
+     */
     private static List<LynnLandmark> parseLandmarksFromJson(String json) {
         List<LynnLandmark> landmarks = new ArrayList<>();
         
@@ -141,21 +279,19 @@ public class LynnApiService {
                 String status = landmarkObj.has("status") ? landmarkObj.get("status").getAsString() : "Normal";
                 
                 // 解析坐标
-                LynnLandmark.Coordinates coordinates = null;
+                LynnLandmark.Coordinates coordinates = LynnLandmark.Coordinates.UNKNOWN;
                 if (landmarkObj.has("coordinates")) {
                     JsonObject coordObj = landmarkObj.getAsJsonObject("coordinates");
                     String x = coordObj.get("x").getAsString();
                     String y = coordObj.get("y").getAsString();
                     String z = coordObj.get("z").getAsString();
-                    coordinates = new LynnLandmark.Coordinates(x, y, z);
-                } else {
-                    coordinates = new LynnLandmark.Coordinates("Unknown", "Unknown", "Unknown");
+                    coordinates = LynnLandmark.Coordinates.parse(x, y, z);
                 }
                 
                 landmarks.add(new LynnLandmark(id, name, grade, status, coordinates));
             }
-        } catch (Exception e) {
-            // 解析失败时返回空列表
+        } catch (RuntimeException e) {
+            throw new CompletionException(new IOException("API 响应解析失败: " + e.getMessage(), e));
         }
         
         return landmarks;
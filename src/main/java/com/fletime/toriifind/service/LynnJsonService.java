@@ -1,15 +1,17 @@
 package com.fletime.toriifind.service;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.fletime.toriifind.search.LandmarkIndex;
 import com.fletime.toriifind.service.LynnApiService.LynnLandmark;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.Writer;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -25,43 +27,42 @@ public class LynnJsonService {
      * @throws IOException 网络或解析异常
      */
     public static List<LynnLandmark> loadFromDataSource(com.fletime.toriifind.config.SourceConfig.DataSource dataSource) throws IOException {
-        // 首先尝试查找对应的本地文件
+        return loadIndexFromDataSource(dataSource).getLandmarks();
+    }
+    
+    /**
+     * 从数据源加载Lynn格式数据的搜索索引。
+     * 总是使用本地文件的快照：本地文件不存在时先下载到本地文件，只解析一次，之后的查询共享同一个快照
+     * @param dataSource 数据源配置
+     * @return 包含零洲和后土全部地标的索引
+     * @throws IOException 网络或解析异常
+     */
+    public static LandmarkIndex loadIndexFromDataSource(com.fletime.toriifind.config.SourceConfig.DataSource dataSource) throws IOException {
+        String sourceName = null;
         for (java.util.Map.Entry<String, com.fletime.toriifind.config.SourceConfig.DataSource> entry : 
              com.fletime.toriifind.ToriiFind.getAllSources().entrySet()) {
             if (entry.getValue() == dataSource) {
-                String sourceName = entry.getKey();
-                Path localFile = LocalDataService.getLocalDataFile(sourceName);
-                
-                if (Files.exists(localFile)) {
-                    try {
-                        return loadFromFile(localFile);
-                    } catch (Exception e) {
-                        System.err.println("[ToriiFind] 读取本地文件失败，尝试从网络下载: " + e.getMessage());
-                        break;
-                    }
-                }
+                sourceName = entry.getKey();
                 break;
             }
         }
+        if (sourceName == null) {
+            throw new IOException("数据源不在当前配置中");
+        }
         
-        // 本地文件不存在或读取失败，从网络加载
-        String[] urls = dataSource.getAllUrls();
-        IOException lastException = null;
-        
-        for (String url : urls) {
-            if (url == null) continue;
-            
+        Path localFile = LocalDataService.getLocalDataFile(sourceName);
+        if (Files.exists(localFile)) {
             try {
-                String jsonContent = downloadJsonContent(url);
-                return parseJsonContent(jsonContent);
-            } catch (IOException e) {
-                lastException = e;
-                // 继续尝试下一个URL
+                return LandmarkSnapshotService.getSnapshot(localFile).getAllIndex();
+            } catch (Exception e) {
+                System.err.println("[ToriiFind] 读取本地文件失败，尝试从网络下载: " + e.getMessage());
+                LocalDataService.downloadDataSource(sourceName, dataSource);
+                return LandmarkSnapshotService.getSnapshot(localFile).getAllIndex();
             }
         }
         
-        // 所有URL都失败了
-        throw lastException != null ? lastException : new IOException("所有镜像地址都不可用");
+        // 本地文件不存在（例如初始下载失败）：下载到本地数据文件后按快照解析，之后的查询直接使用同一个快照
+        return LandmarkSnapshotService.getSnapshot(LocalDataService.ensureLocalData(sourceName, dataSource)).getAllIndex();
     }
     
     /**
@@ -71,8 +72,7 @@ public class LynnJsonService {
      * @throws IOException 网络或解析异常
      */
     public static List<LynnLandmark> loadFromUrl(String jsonUrl) throws IOException {
-        String jsonContent = downloadJsonContent(jsonUrl);
-        return parseJsonContent(jsonContent);
+        return downloadLandmarks(jsonUrl).getAll();
     }
     
     /**
@@ -82,110 +82,247 @@ public class LynnJsonService {
      * @throws IOException 文件读取或解析异常
      */
     public static List<LynnLandmark> loadFromFile(Path filePath) throws IOException {
-        try (Reader reader = Files.newBufferedReader(filePath)) {
-            StringBuilder content = new StringBuilder();
-            char[] buffer = new char[1024];
-            int length;
-            while ((length = reader.read(buffer)) != -1) {
-                content.append(buffer, 0, length);
-            }
-            return parseJsonContent(content.toString());
+        return LandmarkSnapshotService.getSnapshot(filePath).getAll();
+    }
+    
+    private static ParsedData downloadLandmarks(String jsonUrl) throws IOException {
+        HttpResponse<InputStream> response = HttpService.get(jsonUrl, HttpService.RequestKind.DOWNLOAD);
+        try (Reader reader = new InputStreamReader(HttpService.body(response), StandardCharsets.UTF_8)) {
+            return readLandmarks(reader);
         }
     }
     
-    private static String downloadJsonContent(String jsonUrl) throws IOException {
-        HttpURLConnection conn = (HttpURLConnection) new URL(jsonUrl).openConnection();
-        conn.setRequestMethod("GET");
-        conn.setConnectTimeout(5000);
-        conn.setReadTimeout(5000);
+    /**
+     * 流式解析结果：根级别的版本号以及零洲、后土两部分地标
+     */
+    public static class ParsedData {
+        private final String version;
+        private final List<LynnLandmark> zeroth;
+        private final List<LynnLandmark> houtu;
         
-        try (InputStream in = conn.getInputStream()) {
-            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        public ParsedData(String version, List<LynnLandmark> zeroth, List<LynnLandmark> houtu) {
+            this.version = version;
+            this.zeroth = zeroth;
+            this.houtu = houtu;
+        }
+        
+        public String getVersion() { return version; }
+        public List<LynnLandmark> getZeroth() { return zeroth; }
+        public List<LynnLandmark> getHoutu() { return houtu; }
+        
+        public List<LynnLandmark> getAll() {
+            List<LynnLandmark> all = new ArrayList<>(zeroth.size() + houtu.size());
+            all.addAll(zeroth);
+            all.addAll(houtu);
+            return all;
         }
     }
     
-    private static List<LynnLandmark> parseJsonContent(String jsonContent) {
-        List<LynnLandmark> landmarks = new ArrayList<>();
+    /**
+     * 使用 JsonReader 流式解析数据文件，一次遍历同时得到 zeroth 和 houtu 两部分，
+     * 直接由 token 流创建地标对象，不生成中间字符串或 JSON 树
+     * @param reader 输入
+     * @return 解析结果
+     * @throws IOException 读取或格式异常
+     */
+    public static ParsedData readLandmarks(Reader reader) throws IOException {
+        String version = null;
+        List<LynnLandmark> zeroth = new ArrayList<>();
+        List<LynnLandmark> houtu = new ArrayList<>();
         
-        try {
-            JsonObject rootObject = JsonParser.parseString(jsonContent).getAsJsonObject();
-            
-            // 解析零洲数据
-            if (rootObject.has("zeroth")) {
-                JsonArray zerothArray = rootObject.getAsJsonArray("zeroth");
-                landmarks.addAll(parseArrayToLandmarks(zerothArray));
-            }
-            
-            // 解析后土数据  
-            if (rootObject.has("houtu")) {
-                JsonArray houtuArray = rootObject.getAsJsonArray("houtu");
-                landmarks.addAll(parseArrayToLandmarks(houtuArray));
+        try (JsonReader jsonReader = new JsonReader(reader)) {
+            // 与 JsonParser 保持一致的宽松模式
+            jsonReader.setLenient(true);
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                String field = jsonReader.nextName();
+                switch (field) {
+                    case "version" -> version = readNullableString(jsonReader);
+                    case "zeroth" -> readLandmarkArray(jsonReader, zeroth);
+                    case "houtu" -> readLandmarkArray(jsonReader, houtu);
+                    default -> jsonReader.skipValue();
+                }
             }
-        } catch (Exception e) {
-            // 解析失败时返回空列表
+            jsonReader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("数据文件格式错误: " + e.getMessage(), e);
         }
         
-        return landmarks;
+        return new ParsedData(version, zeroth, houtu);
     }
     
-    private static List<LynnLandmark> parseArrayToLandmarks(JsonArray jsonArray) {
-        List<LynnLandmark> landmarks = new ArrayList<>();
-        
-        for (int i = 0; i < jsonArray.size(); i++) {
-            JsonObject landmarkObj = jsonArray.get(i).getAsJsonObject();
-            
-            String id = landmarkObj.get("id").getAsString();
-            String name = landmarkObj.get("name").getAsString();
-            String grade = landmarkObj.get("grade").getAsString();
-            String status = landmarkObj.has("status") ? landmarkObj.get("status").getAsString() : "Normal";
-            
-            // 解析坐标
-            LynnLandmark.Coordinates coordinates;
-            if (landmarkObj.has("coordinates")) {
-                JsonObject coordObj = landmarkObj.getAsJsonObject("coordinates");
-                String x = coordObj.get("x").getAsString();
-                String y = coordObj.get("y").getAsString();
-                String z = coordObj.get("z").getAsString();
-                coordinates = new LynnLandmark.Coordinates(x, y, z);
-            } else {
-                coordinates = new LynnLandmark.Coordinates("Unknown", "Unknown", "Unknown");
+    /**
+     * 流式读取根级别的 version 字段，读到后立即返回，不解析其它内容
+     * @return 版本号，不存在时返回 null
+     */
+    public static String readRootVersion(Reader reader) throws IOException {
+        try (JsonReader jsonReader = new JsonReader(reader)) {
+            jsonReader.setLenient(true);
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                if ("version".equals(jsonReader.nextName())) {
+                    return readNullableString(jsonReader);
+                }
+                jsonReader.skipValue();
             }
-            
-            landmarks.add(new LynnLandmark(id, name, grade, status, coordinates));
+        } catch (IllegalStateException e) {
+            throw new IOException("数据文件格式错误: " + e.getMessage(), e);
         }
-        
-        return landmarks;
+        return null;
     }
     
     /**
-     * 按名称或拼音过滤Landmark
-     * @param landmarks 原始Landmark列表
-     * @param keyword 关键字
-     * @param toPinyinFunc 拼音转换函数
-     * @return 过滤后的列表
+     * 以与数据文件相同的格式写出地标（{"version": ..., "zeroth": [...], "houtu": [...]}），
+     * 写出的内容可以由 {@link #readLandmarks(Reader)} 读回
+     * @param writer 输出
+     * @param version 版本号
+     * @param zeroth 零洲地标
+     * @param houtu 后土地标
+     * @throws IOException 写入异常
      */
-    public static List<LynnLandmark> filterByNameOrPinyin(List<LynnLandmark> landmarks, String keyword, java.util.function.Function<String, String> toPinyinFunc) {
-        List<LynnLandmark> results = new ArrayList<>();
-        
-        // 首先按名称精确匹配
+    public static void writeLandmarks(Writer writer, String version, List<LynnLandmark> zeroth, List<LynnLandmark> houtu) throws IOException {
+        try (JsonWriter jsonWriter = new JsonWriter(writer)) {
+            jsonWriter.beginObject();
+            jsonWriter.name("version").value(version);
+            jsonWriter.name("zeroth");
+            writeLandmarkArray(jsonWriter, zeroth);
+            jsonWriter.name("houtu");
+            writeLandmarkArray(jsonWriter, houtu);
+            jsonWriter.endObject();
+        }
+    }
+    
+    private static void writeLandmarkArray(JsonWriter jsonWriter, List<LynnLandmark> landmarks) throws IOException {
+        jsonWriter.beginArray();
         for (LynnLandmark landmark : landmarks) {
-            if (landmark.getName().contains(keyword)) {
-                results.add(landmark);
+            jsonWriter.beginObject();
+            jsonWriter.name("id").value(landmark.getId());
+            jsonWriter.name("name").value(landmark.getName());
+            jsonWriter.name("grade").value(landmark.getGrade());
+            jsonWriter.name("status").value(landmark.getStatus());
+            LynnLandmark.Coordinates coordinates = landmark.getCoordinates();
+            if (coordinates != null && !coordinates.isUnknown()) {
+                jsonWriter.name("coordinates").beginObject()
+                    .name("x").value(coordinates.getX())
+                    .name("y").value(coordinates.getY())
+                    .name("z").value(coordinates.getZ())
+                    .endObject();
+            }
+            jsonWriter.endObject();
+        }
+        jsonWriter.endArray();
+    }
+    
+    /**
+     * 严格解析地标数组（API 返回的格式），任一地标格式错误都会抛出异常而不是返回部分结果
+     * @param reader 输入
+     * @return 地标列表
+     * @throws IOException 读取或格式异常
+     */
+    public static List<LynnLandmark> readLandmarkList(Reader reader) throws IOException {
+        List<LynnLandmark> landmarks = new ArrayList<>();
+        try (JsonReader jsonReader = new JsonReader(reader)) {
+            jsonReader.setLenient(true);
+            if (jsonReader.peek() != JsonToken.BEGIN_ARRAY) {
+                throw new IOException("返回内容不是地标数组");
             }
+            readLandmarkArray(jsonReader, landmarks);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("数据格式错误: " + e.getMessage(), e);
         }
+        return landmarks;
+    }
+    
+    private static void readLandmarkArray(JsonReader jsonReader, List<LynnLandmark> target) throws IOException {
+        if (jsonReader.peek() != JsonToken.BEGIN_ARRAY) {
+            jsonReader.skipValue();
+            return;
+        }
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            target.add(readLandmark(jsonReader));
+        }
+        jsonReader.endArray();
+    }
+    
+    private static LynnLandmark readLandmark(JsonReader jsonReader) throws IOException {
+        String id = null;
+        String name = null;
+        String grade = null;
+        String status = null;
+        LynnLandmark.Coordinates coordinates = null;
         
-        // 如果没有找到且关键字是字母，则按拼音搜索
-        if (results.isEmpty() && keyword.matches("^[a-zA-Z]+$")) {
-            String lowercaseKeyword = keyword.toLowerCase();
-            for (LynnLandmark landmark : landmarks) {
-                String namePinyin = toPinyinFunc.apply(landmark.getName()).toLowerCase();
-                if (namePinyin.contains(lowercaseKeyword)) {
-                    results.add(landmark);
-                }
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            switch (jsonReader.nextName()) {
+                case "id" -> id = readNullableString(jsonReader);
+                case "name" -> name = readNullableString(jsonReader);
+                case "grade" -> grade = readNullableString(jsonReader);
+                case "status" -> status = readNullableString(jsonReader);
+                case "coordinates" -> coordinates = readCoordinates(jsonReader);
+                default -> jsonReader.skipValue();
             }
         }
+        jsonReader.endObject();
         
-        return results;
+        if (id == null || name == null || grade == null) {
+            throw new IOException("地标数据缺少 id/name/grade 字段: " + jsonReader.getPath());
+        }
+        if (coordinates == null) {
+            coordinates = LynnLandmark.Coordinates.UNKNOWN;
+        }
+        return new LynnLandmark(id, name, grade, status != null ? status : "Normal", coordinates);
+    }
+    
+    private static LynnLandmark.Coordinates readCoordinates(JsonReader jsonReader) throws IOException {
+        if (jsonReader.peek() != JsonToken.BEGIN_OBJECT) {
+            jsonReader.skipValue();
+            return null;
+        }
+        double x = Double.NaN;
+        double y = Double.NaN;
+        double z = Double.NaN;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            switch (jsonReader.nextName()) {
+                case "x" -> x = readCoordinate(jsonReader);
+                case "y" -> y = readCoordinate(jsonReader);
+                case "z" -> z = readCoordinate(jsonReader);
+                default -> jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+        return LynnLandmark.Coordinates.of(x, y, z);
+    }
+    
+    /**
+     * 读取单个坐标分量，数字直接读取为 double，"Unknown" 等无法解析的值返回 NaN
+     */
+    private static double readCoordinate(JsonReader jsonReader) throws IOException {
+        if (jsonReader.peek() == JsonToken.NUMBER) {
+            return jsonReader.nextDouble();
+        }
+        return LynnLandmark.Coordinates.parseComponent(readNullableString(jsonReader));
+    }
+    
+    /**
+     * 读取字符串或数字值（数字保持文件中的原始写法），null 和其它类型返回 null
+     */
+    private static String readNullableString(JsonReader jsonReader) throws IOException {
+        JsonToken token = jsonReader.peek();
+        switch (token) {
+            case STRING:
+            case NUMBER:
+                return jsonReader.nextString();
+            case BOOLEAN:
+                return String.valueOf(jsonReader.nextBoolean());
+            case NULL:
+                jsonReader.nextNull();
+                return null;
+            default:
+                jsonReader.skipValue();
+                return null;
+        }
     }
     
     /**
@@ -0,0 +1,240 @@
+package com.fletime.toriifind.service;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 镜像评分（config/toriifind/state/mirror-scores.json）。
+ * 按主机记录每次请求的响应时间和成功率的指数加权移动平均（EWMA），跨会话保存；
+ * 下载和更新检测按评分排列镜像，超时时间根据最近响应时间的分位数自适应调整。
+ */
+public class MirrorScoreService {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Type MAP_TYPE = new TypeToken<LinkedHashMap<String, Score>>() {}.getType();
+
+    // EWMA 平滑系数，越大越重视最近的请求
+    private static final double ALPHA = 0.3;
+    // 用于计算分位数的最近样本数
+    private static final int RECENT_SAMPLES = 32;
+    // 样本不足时不调整超时
+    private static final int MIN_SAMPLES_FOR_TIMEOUT = 5;
+    // 没有记录的主机使用的默认延迟（毫秒），保证新镜像也有机会被尝试
+    private static final double UNKNOWN_LATENCY_MS = 1000;
+
+    private static final AtomicBoolean SAVE_SCHEDULED = new AtomicBoolean();
+    // 第一次使用本类时读取，之后只在内存中更新
+    private static final Map<String, Score> SCORES = new ConcurrentHashMap<>(load());
+
+    /**
+     * 主机评分。只在 MirrorScoreService 的锁内修改，读取方不加锁，
+     * 因此字段都是 volatile，recent 每次整体替换为新数组
+     */
+    public static class Score {
+        private volatile double latencyMs;
+        private volatile double successRate = 1.0;
+        private volatile long samples;
+        private volatile long failures;
+        private volatile long[] recent = new long[0];
+
+        public double getLatencyMs() { return latencyMs; }
+        public double getSuccessRate() { return successRate; }
+        public long getSamples() { return samples; }
+        public long getFailures() { return failures; }
+
+        /**
+         * 期望代价：平均延迟除以成功率，越小越好
+         */
+        public double getCost() {
+            return latencyMs / Math.max(successRate, 0.05);
+        }
+
+        /**
+         * 最近响应时间的分位数（毫秒），没有样本时返回 -1
+         */
+        public long percentile(double p) {
+            return MirrorScoreService.percentile(recent, p);
+        }
+
+        private void addLatency(long millis) {
+            latencyMs = samples == 0 ? millis : ALPHA * millis + (1 - ALPHA) * latencyMs;
+            long[] current = recent == null ? new long[0] : recent;
+            int keep = Math.min(current.length, RECENT_SAMPLES - 1);
+            long[] next = new long[keep + 1];
+            System.arraycopy(current, current.length - keep, next, 0, keep);
+            next[keep] = millis;
+            recent = next;
+        }
+
+        private void addOutcome(boolean success) {
+            successRate = ALPHA * (success ? 1 : 0) + (1 - ALPHA) * successRate;
+            if (!success) {
+                failures++;
+            }
+        }
+    }
+
+    /**
+     * 记录一次请求结果
+     * @param url 请求地址
+     * @param latencyMs 到收到响应头为止的耗时
+     * @param success 是否成功
+     */
+    public static void record(String url, long latencyMs, boolean success) {
+        String host = hostOf(url);
+        if (host == null) {
+            return;
+        }
+        synchronized (MirrorScoreService.class) {
+            Score score = SCORES.computeIfAbsent(host, h -> new Score());
+            if (success) {
+                score.addLatency(latencyMs);
+            }
+            score.addOutcome(success);
+            score.samples++;
+        }
+        scheduleSave();
+    }
+
+    /**
+     * 获取主机的评分
+     * @return 评分，没有记录时返回 null
+     */
+    public static Score getScore(String url) {
+        String host = hostOf(url);
+        return host == null ? null : SCORES.get(host);
+    }
+
+    /**
+     * 获取所有主机的评分
+     */
+    public static Map<String, Score> getAllScores() {
+        return new LinkedHashMap<>(SCORES);
+    }
+
+    /**
+     * 按评分从好到差排列地址（评分相同时保持原顺序，空地址和重复地址会被去掉）
+     */
+    public static List<String> orderUrls(String[] urls) {
+        List<String> ordered = new ArrayList<>();
+        for (String url : urls) {
+            if (url != null && !ordered.contains(url)) {
+                ordered.add(url);
+            }
+        }
+        Map<String, Double> costs = new LinkedHashMap<>();
+        for (String url : ordered) {
+            Score score = getScore(url);
+            double cost = score != null && score.getLatencyMs() > 0 ? score.getCost() : UNKNOWN_LATENCY_MS;
+            // 熔断中的主机排在最后
+            costs.put(url, CircuitBreakerService.allowRequest(url) ? cost : Double.MAX_VALUE);
+        }
+        ordered.sort(Comparator.comparingDouble(costs::get));
+        return ordered;
+    }
+
+    /**
+     * 根据最近响应时间计算超时：p95 的 3 倍再加 250ms，
+     * 限制在默认超时的 1/4 到 2 倍之间；样本不足时使用默认超时
+     */
+    public static Duration timeoutFor(String url, Duration defaultTimeout) {
+        Score score = getScore(url);
+        // 只读取一次 recent，样本数判断和分位数使用同一组样本
+        long[] samples = score != null ? score.recent : null;
+        if (samples == null || samples.length < MIN_SAMPLES_FOR_TIMEOUT) {
+            return defaultTimeout;
+        }
+        long p95 = percentile(samples, 0.95);
+        long millis = p95 * 3 + 250;
+        long min = defaultTimeout.toMillis() / 4;
+        long max = defaultTimeout.toMillis() * 2;
+        return Duration.ofMillis(Math.max(min, Math.min(max, millis)));
+    }
+
+    private static long percentile(long[] samples, double p) {
+        if (samples == null || samples.length == 0) {
+            return -1;
+        }
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static String hostOf(String url) {
+        try {
+            return url == null ? null : URI.create(url).getHost();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Path getScoreFile() {
+        return LocalDataService.getStateDir().resolve("mirror-scores.json");
+    }
+
+    private static Map<String, Score> load() {
+        Path file = getScoreFile();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                Map<String, Score> loaded = GSON.fromJson(reader, MAP_TYPE);
+                if (loaded != null) {
+                    return loaded;
+                }
+            } catch (Exception e) {
+                System.err.println("[ToriiFind] 读取镜像评分失败，将重新统计: " + e.getMessage());
+            }
+        }
+        return new LinkedHashMap<>();
+    }
+
+    /**
+     * 合并短时间内的多次更新，最多每 5 秒写一次文件
+     */
+    private static void scheduleSave() {
+        if (SAVE_SCHEDULED.compareAndSet(false, true)) {
+            TaskExecutorService.delayed(5, TimeUnit.SECONDS).execute(() -> {
+                SAVE_SCHEDULED.set(false);
+                save();
+            });
+        }
+    }
+
+    private static synchronized void save() {
+        Path file = getScoreFile();
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer writer = Files.newBufferedWriter(tempFile)) {
+                GSON.toJson(new LinkedHashMap<>(SCORES), MAP_TYPE, writer);
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("[ToriiFind] 保存镜像评分失败: " + e.getMessage());
+        }
+    }
+}
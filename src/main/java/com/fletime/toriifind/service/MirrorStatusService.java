@@ -6,9 +6,9 @@ import com.fletime.toriifind.config.SourceConfig;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -86,7 +86,7 @@ public class MirrorStatusService {
             
             CompletableFuture<MirrorStatus> future = CompletableFuture.supplyAsync(() -> {
                 return checkSingleMirror(url, isPrimary);
-            }).orTimeout(3, TimeUnit.SECONDS)
+            }, TaskExecutorService.io()).orTimeout(3, TimeUnit.SECONDS)
             .handle((status, throwable) -> {
                 if (throwable != null) {
                     return new MirrorStatus(url, false, null, 0, "检测超时", isPrimary);
@@ -122,20 +122,33 @@ public class MirrorStatusService {
         try {
             long startTime = System.currentTimeMillis();
             
-            // 首先用HEAD请求检查可用性
-            HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-            conn.setRequestMethod("HEAD");
-            conn.setConnectTimeout(2000);
-            conn.setReadTimeout(2000);
+            // 一次请求同时检查可用性和版本：只读取前1KB
+            HttpRequest.Builder request = HttpService.rangeRequest(url, HttpService.RequestKind.PROBE, 1024);
             
-            int responseCode = conn.getResponseCode();
+            // 该镜像是本地数据的来源时带上校验信息，未变化时服务器只返回 304
+            DataManifestService.Entry entry = DataManifestService.findByUrl(url);
+            if (entry != null) {
+                if (entry.getEtag() != null) {
+                    request.header("If-None-Match", entry.getEtag());
+                }
+                if (entry.getLastModified() != null) {
+                    request.header("If-Modified-Since", entry.getLastModified());
+                }
+            }
+            
+            HttpResponse<InputStream> response = HttpService.send(request.build());
+            int responseCode = response.statusCode();
             long responseTime = System.currentTimeMillis() - startTime;
             
-            if (responseCode == 200) {
-                // 获取版本信息
-                String version = getVersionFromUrl(url);
+            if (responseCode == 304) {
+                HttpService.discard(response);
+                String version = entry.getVersion() != null ? "v" + entry.getVersion() : null;
+                return new MirrorStatus(url, true, version, responseTime, null, isPrimary);
+            } else if (responseCode == 200 || responseCode == 206) {
+                String version = readVersion(response);
                 return new MirrorStatus(url, true, version, responseTime, null, isPrimary);
             } else {
+                HttpService.discard(response);
                 return new MirrorStatus(url, false, null, responseTime, "HTTP " + responseCode, isPrimary);
             }
         } catch (Exception e) {
@@ -144,55 +157,41 @@ public class MirrorStatusService {
     }
     
     /**
-     * 从URL获取版本信息
+     * 从响应的前1KB中读取版本信息
      */
-    private static String getVersionFromUrl(String url) {
+    private static String readVersion(HttpResponse<InputStream> response) {
         try {
-            HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(1500);
-            conn.setReadTimeout(1500);
-            
-            // 只读取前1KB来获取版本信息
-            conn.setRequestProperty("Range", "bytes=0-1023");
+            String content = HttpService.bodyPrefix(response, 1024);
             
-            if (conn.getResponseCode() == 200 || conn.getResponseCode() == 206) {
-                try (InputStream in = conn.getInputStream()) {
-                    byte[] buffer = new byte[1024];
-                    int bytesRead = in.read(buffer);
-                    String content = new String(buffer, 0, bytesRead, StandardCharsets.UTF_8);
-                    
-                    // 查找版本号
-                    if (content.contains("\"version\"")) {
-                        try {
-                            // 尝试解析JSON
-                            int startIndex = content.indexOf("{");
-                            if (startIndex >= 0) {
-                                // 找到第一个完整的JSON对象
-                                int braceCount = 0;
-                                int endIndex = startIndex;
-                                for (int i = startIndex; i < content.length(); i++) {
-                                    char c = content.charAt(i);
-                                    if (c == '{') braceCount++;
-                                    else if (c == '}') braceCount--;
-                                    
-                                    if (braceCount == 0) {
-                                        endIndex = i + 1;
-                                        break;
-                                    }
-                                }
-                                
-                                String jsonPart = content.substring(startIndex, endIndex);
-                                JsonObject jsonObject = JsonParser.parseString(jsonPart).getAsJsonObject();
-                                
-                                if (jsonObject.has("version")) {
-                                    return "v" + jsonObject.get("version").getAsString();
-                                }
+            // 查找版本号
+            if (content.contains("\"version\"")) {
+                try {
+                    // 尝试解析JSON
+                    int startIndex = content.indexOf("{");
+                    if (startIndex >= 0) {
+                        // 找到第一个完整的JSON对象
+                        int braceCount = 0;
+                        int endIndex = startIndex;
+                        for (int i = startIndex; i < content.length(); i++) {
+                            char c = content.charAt(i);
+                            if (c == '{') braceCount++;
+                            else if (c == '}') braceCount--;
+                            
+                            if (braceCount == 0) {
+                                endIndex = i + 1;
+                                break;
                             }
-                        } catch (Exception e) {
-                            // JSON解析失败，忽略
+                        }
+                        
+                        String jsonPart = content.substring(startIndex, endIndex);
+                        JsonObject jsonObject = JsonParser.parseString(jsonPart).getAsJsonObject();
+                        
+                        if (jsonObject.has("version")) {
+                            return "v" + jsonObject.get("version").getAsString();
                         }
                     }
+                } catch (Exception e) {
+                    // JSON解析失败，忽略
                 }
             }
         } catch (Exception e) {
@@ -202,19 +201,23 @@ public class MirrorStatusService {
     }
     
     /**
-     * 获取最佳可用镜像
+     * 获取最佳可用镜像（按历史评分排序，而不是只看本次检测的响应时间）
      */
     public static MirrorStatus getBestMirror(List<MirrorStatus> mirrors) {
-        MirrorStatus best = null;
-        long bestTime = Long.MAX_VALUE;
+        String[] availableUrls = mirrors.stream()
+            .filter(MirrorStatus::isAvailable)
+            .map(MirrorStatus::getUrl)
+            .toArray(String[]::new);
+        if (availableUrls.length == 0) {
+            return null;
+        }
         
+        String bestUrl = MirrorScoreService.orderUrls(availableUrls).get(0);
         for (MirrorStatus mirror : mirrors) {
-            if (mirror.isAvailable() && mirror.getResponseTime() < bestTime) {
-                best = mirror;
-                bestTime = mirror.getResponseTime();
+            if (mirror.isAvailable() && bestUrl.equals(mirror.getUrl())) {
+                return mirror;
             }
         }
-        
-        return best;
+        return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.fletime.toriifind.service;
+
+import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
+import net.minecraft.client.network.ClientPlayerEntity;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 每个玩家的查询会话。
+ * 玩家发起新的查询时，上一次还未完成的查询会被取消：取消会沿着 future 链传到 HTTP 请求，
+ * 没有其它调用者共享的请求会被中止，旧查询的结果也不会再显示。
+ */
+public class QuerySessionService {
+
+    public static class Session {
+        private final List<CompletableFuture<?>> futures = new CopyOnWriteArrayList<>();
+        private volatile boolean cancelled;
+
+        /**
+         * 登记属于此会话的查询，会话被取消时一起取消
+         * @return 传入的 future
+         */
+        public <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+            futures.add(future);
+            if (cancelled) {
+                future.cancel(true);
+            }
+            return future;
+        }
+
+        /**
+         * 会话是否已被更新的查询取代（此时不应再显示结果或错误）
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return 是否还有未完成的查询被取消
+         */
+        private boolean cancel() {
+            cancelled = true;
+            boolean pending = false;
+            for (CompletableFuture<?> future : futures) {
+                pending |= future.cancel(true);
+            }
+            futures.clear();
+            return pending;
+        }
+    }
+
+    private static final Map<String, Session> SESSIONS = new ConcurrentHashMap<>();
+    private static final AtomicLong SUPERSEDED = new AtomicLong();
+
+    /**
+     * 为命令的执行者开始新的查询会话，并取消该玩家上一次的查询
+     * @param source 命令来源
+     * @return 新会话
+     */
+    public static Session begin(FabricClientCommandSource source) {
+        ClientPlayerEntity player = source.getPlayer();
+        String owner = player != null ? player.getUuid().toString() : "local";
+        Session session = new Session();
+        Session previous = SESSIONS.put(owner, session);
+        if (previous != null && previous.cancel()) {
+            SUPERSEDED.incrementAndGet();
+        }
+        return session;
+    }
+
+    /** 被更新的查询取消的查询数 */
+    public static long getSupersededCount() { return SUPERSEDED.get(); }
+}
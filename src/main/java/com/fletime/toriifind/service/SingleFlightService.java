@@ -0,0 +1,143 @@
+package com.fletime.toriifind.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 合并并发的相同请求（single-flight）。
+ * 同一个键在请求完成前只会真正发出一次，期间的其它调用者共享同一个结果，整个过程不阻塞任何线程。
+ * 共享的请求按调用者计数，所有调用者都取消后才会取消底层请求（中止 HTTP 交换）。
+ */
+public class SingleFlightService {
+
+    /**
+     * 进行中的请求及其调用者计数。
+     * 加入请求和放弃请求都在 IN_FLIGHT.compute 中对同一个键进行，二者不会交错：
+     * 新调用者要么在放弃之前加入（请求继续），要么在放弃之后看不到这个请求（重新发起）
+     */
+    private static class Flight<T> {
+        private final String key;
+        private final CompletableFuture<T> shared = new CompletableFuture<>();
+        private CompletableFuture<T> source;
+        private int subscribers;
+        private boolean aborted;
+
+        private Flight(String key) {
+            this.key = key;
+        }
+
+        /**
+         * 为调用者创建独立的 future，取消它只会减少计数。只在 IN_FLIGHT.compute 中调用
+         */
+        private synchronized CompletableFuture<T> subscribe() {
+            subscribers++;
+            CompletableFuture<T> copy = shared.copy();
+            copy.whenComplete((value, error) -> {
+                if (copy.isCancelled()) {
+                    release();
+                }
+            });
+            return copy;
+        }
+
+        private void release() {
+            AtomicReference<CompletableFuture<T>> toCancel = new AtomicReference<>();
+            AtomicBoolean abort = new AtomicBoolean();
+            IN_FLIGHT.compute(key, (k, existing) -> {
+                synchronized (this) {
+                    if (--subscribers == 0 && !shared.isDone() && !aborted) {
+                        aborted = true;
+                        abort.set(true);
+                        toCancel.set(source);
+                    }
+                }
+                // 放弃的请求先从表中移除，之后到来的调用者会重新发起请求
+                return abort.get() && existing == this ? null : existing;
+            });
+            if (abort.get()) {
+                ABORTED.incrementAndGet();
+                if (toCancel.get() != null) {
+                    toCancel.get().cancel(true);
+                }
+            }
+        }
+
+        private void start(CompletableFuture<T> source) {
+            boolean cancelNow;
+            synchronized (this) {
+                this.source = source;
+                cancelNow = aborted;
+            }
+            if (cancelNow) {
+                source.cancel(true);
+            }
+        }
+    }
+
+    private static final Map<String, Flight<?>> IN_FLIGHT = new ConcurrentHashMap<>();
+    private static final AtomicLong STARTED = new AtomicLong();
+    private static final AtomicLong COALESCED = new AtomicLong();
+    private static final AtomicLong ABORTED = new AtomicLong();
+
+    /**
+     * 执行请求；如果相同键的请求正在进行，直接共享它的结果。
+     * 每个调用者拿到的是独立的 future，取消它不会影响其它调用者；全部调用者取消后底层请求也会被取消
+     * @param key 请求键
+     * @param supplier 发起请求（只在没有进行中的相同请求时调用），返回的 future 被取消时应中止请求
+     * @return 请求结果
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CompletableFuture<T> execute(String key, Supplier<CompletableFuture<T>> supplier) {
+        AtomicReference<CompletableFuture<T>> result = new AtomicReference<>();
+        AtomicReference<Flight<T>> started = new AtomicReference<>();
+        IN_FLIGHT.compute(key, (k, existing) -> {
+            if (existing != null) {
+                // 放弃请求时会先把它移除，所以表中的请求都还可以加入
+                COALESCED.incrementAndGet();
+                result.set(((Flight<T>) existing).subscribe());
+                return existing;
+            }
+            Flight<T> flight = new Flight<>(key);
+            result.set(flight.subscribe());
+            started.set(flight);
+            return flight;
+        });
+
+        Flight<T> flight = started.get();
+        if (flight != null) {
+            // 在 compute 之外发起请求，期间到来的相同调用会加入这个请求
+            STARTED.incrementAndGet();
+            try {
+                CompletableFuture<T> source = supplier.get();
+                flight.start(source);
+                source.whenComplete((value, error) -> {
+                    // 先移除再完成，完成之后到来的调用会重新发起请求
+                    IN_FLIGHT.remove(key, flight);
+                    if (error != null) {
+                        flight.shared.completeExceptionally(error);
+                    } else {
+                        flight.shared.complete(value);
+                    }
+                });
+            } catch (RuntimeException e) {
+                IN_FLIGHT.remove(key, flight);
+                flight.shared.completeExceptionally(e);
+            }
+        }
+        return result.get();
+    }
+
+    /** 当前正在进行的请求数 */
+    public static int getInFlightCount() { return IN_FLIGHT.size(); }
+    /** 实际发出的请求数 */
+    public static long getStartedCount() { return STARTED.get(); }
+    /** 因相同请求正在进行而被合并的调用数 */
+    public static long getCoalescedCount() { return COALESCED.get(); }
+    /** 因所有调用者都已取消而被中止的请求数 */
+    public static long getAbortedCount() { return ABORTED.get(); }
+}
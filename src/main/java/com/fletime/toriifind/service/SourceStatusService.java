@@ -4,12 +4,14 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.fletime.toriifind.config.SourceConfig;
 
-import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class SourceStatusService {
@@ -74,13 +76,13 @@ public class SourceStatusService {
             healthUrl += "api/landmarks?source=zth";
             
             long startTime = System.currentTimeMillis();
-            HttpURLConnection conn = (HttpURLConnection) new URL(healthUrl).openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(2000);  // 减少到2秒
-            conn.setReadTimeout(2000);     // 减少到2秒
-            conn.setRequestProperty("Accept", "application/json");
+            HttpResponse<InputStream> response = HttpService.send(
+                HttpService.request(healthUrl, HttpService.RequestKind.PROBE)
+                    .header("Accept", "application/json")
+                    .build());
+            HttpService.discard(response);
             
-            int responseCode = conn.getResponseCode();
+            int responseCode = response.statusCode();
             long responseTime = System.currentTimeMillis() - startTime;
             
             if (responseCode == 200) {
@@ -99,13 +101,16 @@ public class SourceStatusService {
      * 检查JSON模式状态，找到最佳可用URL
      */
     private static SourceStatus checkBestJsonUrl(SourceConfig.DataSource dataSource) {
-        String[] urls = dataSource.getAllUrls();
+        // 按镜像评分排列，通常第一个地址就能快速响应
+        List<String> urls = MirrorScoreService.orderUrls(dataSource.getAllUrls());
+        if (urls.isEmpty()) {
+            return new SourceStatus(false, null, 0, "未配置URL");
+        }
         
         SourceStatus bestStatus = null;
         long bestResponseTime = Long.MAX_VALUE;
         
         for (String url : urls) {
-            if (url == null) continue;
             
             SourceStatus status = checkJsonUrl(url);
             if (status.isAvailable() && status.getResponseTime() < bestResponseTime) {
@@ -120,7 +125,7 @@ public class SourceStatusService {
         }
         
         // 如果所有URL都不可用，返回第一个URL的状态
-        return bestStatus != null ? bestStatus : checkJsonUrl(urls[0]);
+        return bestStatus != null ? bestStatus : checkJsonUrl(urls.get(0));
     }
     
     /**
@@ -133,12 +138,13 @@ public class SourceStatusService {
         
         try {
             long startTime = System.currentTimeMillis();
-            HttpURLConnection conn = (HttpURLConnection) new URL(jsonUrl).openConnection();
-            conn.setRequestMethod("HEAD");  // 使用HEAD请求减少流量
-            conn.setConnectTimeout(2000);   // 减少到2秒
-            conn.setReadTimeout(2000);      // 减少到2秒
+            HttpResponse<InputStream> response = HttpService.send(
+                HttpService.request(jsonUrl, HttpService.RequestKind.PROBE)
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())  // 使用HEAD请求减少流量
+                    .build());
+            HttpService.discard(response);
             
-            int responseCode = conn.getResponseCode();
+            int responseCode = response.statusCode();
             long responseTime = System.currentTimeMillis() - startTime;
             
             if (responseCode == 200) {
@@ -158,17 +164,13 @@ public class SourceStatusService {
      */
     private static String getJsonVersion(String jsonUrl) {
         try {
-            HttpURLConnection conn = (HttpURLConnection) new URL(jsonUrl).openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(1500);  // 减少版本检测超时
-            conn.setReadTimeout(1500);
+            HttpResponse<InputStream> response = HttpService.get(jsonUrl, HttpService.RequestKind.VERSION);
             
-            try (InputStream in = conn.getInputStream()) {
-                String content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
-                JsonObject jsonObject = JsonParser.parseString(content).getAsJsonObject();
-                
-                if (jsonObject.has("version")) {
-                    return "v" + jsonObject.get("version").getAsString();
+            // 流式读取，找到根级别的 version 后立即停止，不下载整个文件
+            try (Reader reader = new InputStreamReader(HttpService.body(response), StandardCharsets.UTF_8)) {
+                String version = LynnJsonService.readRootVersion(reader);
+                if (version != null) {
+                    return "v" + version;
                 }
             }
         } catch (Exception e) {
@@ -188,21 +190,20 @@ public class SourceStatusService {
             }
             versionUrl += "version";  // 假设API有版本端点
             
-            HttpURLConnection conn = (HttpURLConnection) new URL(versionUrl).openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(1500);  // 减少版本检测超时
-            conn.setReadTimeout(1500);
-            conn.setRequestProperty("Accept", "application/json");
+            HttpResponse<InputStream> response = HttpService.send(
+                HttpService.request(versionUrl, HttpService.RequestKind.VERSION)
+                    .header("Accept", "application/json")
+                    .build());
             
-            if (conn.getResponseCode() == 200) {
-                try (InputStream in = conn.getInputStream()) {
-                    String content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
-                    JsonObject jsonObject = JsonParser.parseString(content).getAsJsonObject();
-                    
-                    if (jsonObject.has("version")) {
-                        return "v" + jsonObject.get("version").getAsString();
-                    }
+            if (response.statusCode() == 200) {
+                String content = HttpService.bodyAsString(response);
+                JsonObject jsonObject = JsonParser.parseString(content).getAsJsonObject();
+                
+                if (jsonObject.has("version")) {
+                    return "v" + jsonObject.get("version").getAsString();
                 }
+            } else {
+                HttpService.discard(response);
             }
         } catch (Exception e) {
             // 忽略版本获取错误
@@ -0,0 +1,109 @@
+package com.fletime.toriifind.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动时间线。
+ * 记录 Mod 初始化各阶段（配置读取、YAML 解析、资源释放、下载等）的开始时间、用时和所在线程，
+ * 通过 /toriifind startup 查看。启动完成后不再记录新的阶段（例如之后的重载配置）。
+ */
+public class StartupTimelineService {
+
+    /**
+     * 一个启动阶段
+     */
+    public static class Phase {
+        private final String name;
+        private final String thread;
+        private final long startNanos;
+        private volatile long endNanos = -1;
+        private volatile String error;
+
+        private Phase(String name) {
+            this.name = name;
+            this.thread = Thread.currentThread().getName();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * 结束阶段
+         */
+        public void end() {
+            if (endNanos < 0) {
+                endNanos = System.nanoTime();
+            }
+        }
+
+        /**
+         * 以失败结束阶段
+         */
+        public void fail(Throwable throwable) {
+            error = throwable.getMessage() != null ? throwable.getMessage() : throwable.getClass().getSimpleName();
+            end();
+        }
+
+        public String getName() { return name; }
+        public String getThread() { return thread; }
+        public String getError() { return error; }
+        public boolean isRunning() { return endNanos < 0; }
+
+        /** 相对于启动开始的时间（毫秒） */
+        public long getOffsetMs() {
+            return TimeUnit.NANOSECONDS.toMillis(startNanos - ORIGIN_NANOS);
+        }
+
+        /** 用时（毫秒），未结束时为到目前为止的用时 */
+        public long getDurationMs() {
+            long end = endNanos < 0 ? System.nanoTime() : endNanos;
+            return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+        }
+    }
+
+    // 启动开始的时间：第一次使用本类时（onInitializeClient 的第一行）
+    private static final long ORIGIN_NANOS = System.nanoTime();
+    private static final List<Phase> PHASES = new CopyOnWriteArrayList<>();
+    // 不记录时返回的阶段，对它的调用不产生任何效果
+    private static final Phase DISCARDED = new Phase("discarded");
+    private static volatile long completedNanos = -1;
+
+    /**
+     * 开始一个阶段；启动已完成时返回不会被记录的阶段
+     * @param name 阶段名称
+     * @return 阶段，完成时调用 end 或 fail
+     */
+    public static Phase begin(String name) {
+        if (isComplete()) {
+            return DISCARDED;
+        }
+        Phase phase = new Phase(name);
+        PHASES.add(phase);
+        return phase;
+    }
+
+    /**
+     * 标记启动完成（所有后台阶段都已结束）
+     */
+    public static void complete() {
+        if (completedNanos < 0) {
+            completedNanos = System.nanoTime();
+            System.out.println("[ToriiFind] 启动完成，用时 " + getTotalMs() + " ms");
+        }
+    }
+
+    public static boolean isComplete() {
+        return completedNanos >= 0;
+    }
+
+    /** 启动总用时（毫秒），未完成时为到目前为止的用时 */
+    public static long getTotalMs() {
+        long end = completedNanos < 0 ? System.nanoTime() : completedNanos;
+        return TimeUnit.NANOSECONDS.toMillis(end - ORIGIN_NANOS);
+    }
+
+    /** 按开始顺序排列的所有阶段 */
+    public static List<Phase> getPhases() {
+        return List.copyOf(PHASES);
+    }
+}
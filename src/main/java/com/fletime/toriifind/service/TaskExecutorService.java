@@ -0,0 +1,230 @@
+package com.fletime.toriifind.service;
+
+import com.fletime.toriifind.ToriiFind;
+import com.fletime.toriifind.config.SourceConfig;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 统一的任务执行器。
+ * 阻塞的网络和文件操作使用虚拟线程（io），解析和索引构建使用有界的 CPU 线程池（cpu），
+ * 需要访问游戏状态或发送聊天消息的回调通过 mainThread 切回客户端主线程，
+ * 主线程任务在客户端 tick 中按 frameBudgetMs 分批执行，不会一次占用主线程太久。
+ * 不使用 ForkJoinPool.commonPool()，避免阻塞操作占满其它 Mod 和游戏自身共用的线程池。
+ */
+public class TaskExecutorService {
+    // CPU 线程池的线程数：留出一个核心给游戏主线程和渲染线程
+    private static final int CPU_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    // CPU 线程池的队列长度，队列满时拒绝新任务（提交者多为客户端主线程，不能让它自己执行）
+    private static final int CPU_QUEUE_CAPACITY = 64;
+
+    /**
+     * 带计数的执行器，记录排队中、执行中和已完成的任务数
+     */
+    public static class TrackedExecutor implements Executor {
+        private final String name;
+        private final Executor delegate;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicLong completed = new AtomicLong();
+
+        private TrackedExecutor(String name, Executor delegate) {
+            this.name = name;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            queued.incrementAndGet();
+            try {
+                delegate.execute(() -> {
+                    queued.decrementAndGet();
+                    active.incrementAndGet();
+                    try {
+                        task.run();
+                    } finally {
+                        active.decrementAndGet();
+                        completed.incrementAndGet();
+                    }
+                });
+            } catch (RuntimeException e) {
+                queued.decrementAndGet();
+                throw e;
+            }
+        }
+
+        public String getName() { return name; }
+        public int getQueued() { return queued.get(); }
+        public int getActive() { return active.get(); }
+        public long getCompleted() { return completed.get(); }
+    }
+
+    private static final TrackedExecutor IO = new TrackedExecutor("io",
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ToriiFind-IO-", 0).factory()));
+
+    private static final TrackedExecutor CPU = new TrackedExecutor("cpu", createCpuPool());
+
+    // 等待在主线程执行的任务，由 runMainThreadTasks 在客户端 tick 中执行
+    private static final ConcurrentLinkedQueue<Runnable> MAIN_QUEUE = new ConcurrentLinkedQueue<>();
+    private static final TrackedExecutor MAIN = new TrackedExecutor("main", MAIN_QUEUE::add);
+    // 因超出时间预算而把剩余任务留到下一个 tick 的次数
+    private static final AtomicLong DEFERRED_TICKS = new AtomicLong();
+    private static volatile long longestMainTaskNanos;
+
+    private static ThreadPoolExecutor createCpuPool() {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "ToriiFind-CPU-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(CPU_THREADS, CPU_THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(CPU_QUEUE_CAPACITY), factory, new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * 阻塞 IO 执行器（每个任务一个虚拟线程）
+     */
+    public static Executor io() {
+        return IO;
+    }
+
+    /**
+     * CPU 密集任务执行器（解析、索引构建）
+     */
+    public static Executor cpu() {
+        return CPU;
+    }
+
+    /**
+     * 客户端主线程执行器，用于显示结果
+     */
+    public static Executor mainThread() {
+        return MAIN;
+    }
+
+    /**
+     * 执行排队的主线程任务（在客户端 tick 结束时调用）。
+     * 用时超过 frameBudgetMs 后剩余任务留到下一个 tick；预算只在任务之间检查，
+     * 所以每个主线程任务都应很小，例如一次只发送一行聊天消息
+     */
+    public static void runMainThreadTasks() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getFrameBudgetMs());
+        Runnable task;
+        while ((task = MAIN_QUEUE.poll()) != null) {
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("[ToriiFind] 主线程任务执行失败: " + e.getMessage());
+            }
+            long end = System.nanoTime();
+            if (end - start > longestMainTaskNanos) {
+                longestMainTaskNanos = end - start;
+            }
+            if (end >= deadline && !MAIN_QUEUE.isEmpty()) {
+                DEFERRED_TICKS.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private static long getFrameBudgetMs() {
+        SourceConfig config = ToriiFind.getSourceConfig();
+        return Math.max(1, config != null ? config.getFrameBudgetMs() : 4);
+    }
+
+    /**
+     * 延迟后在 IO 执行器上运行
+     */
+    public static Executor delayed(long delay, TimeUnit unit) {
+        return CompletableFuture.delayedExecutor(delay, unit, IO);
+    }
+
+    /**
+     * 在 IO 执行器上执行可能抛出受检异常的阻塞任务
+     */
+    public static <T> CompletableFuture<T> supplyIo(Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, IO);
+    }
+
+    /**
+     * 在 IO 执行器上执行任务
+     */
+    public static CompletableFuture<Void> runIo(Runnable task) {
+        return CompletableFuture.runAsync(task, IO);
+    }
+
+    /**
+     * 在 CPU 执行器上执行任务；队列已满时返回以 RejectedExecutionException 失败的 future，不在调用线程上执行
+     */
+    public static <T> CompletableFuture<T> supplyCpu(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, CPU);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 在 CPU 执行器上执行任务；队列已满时返回以 RejectedExecutionException 失败的 future，不在调用线程上执行
+     */
+    public static CompletableFuture<Void> runCpu(Runnable task) {
+        try {
+            return CompletableFuture.runAsync(task, CPU);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 取消 dependent 时一并取消 upstream。
+     * CompletableFuture 的取消不会向上游传播，thenApply 等派生出的 future 被取消时需要用它把取消传回请求本身
+     * @return dependent
+     */
+    public static <T> CompletableFuture<T> propagateCancel(CompletableFuture<T> dependent, CompletableFuture<?> upstream) {
+        dependent.whenComplete((value, error) -> {
+            if (dependent.isCancelled()) {
+                upstream.cancel(true);
+            }
+        });
+        return dependent;
+    }
+
+    /**
+     * 所有执行器（用于统计显示）
+     */
+    public static List<TrackedExecutor> getExecutors() {
+        return List.of(IO, CPU, MAIN);
+    }
+
+    /** 主线程任务因超出时间预算而顺延的 tick 数 */
+    public static long getDeferredTickCount() { return DEFERRED_TICKS.get(); }
+    /** 单个主线程任务的最长用时（毫秒） */
+    public static double getLongestMainTaskMs() { return longestMainTaskNanos / 1_000_000.0; }
+}
@@ -0,0 +1,95 @@
+package com.fletime.toriifind.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * k-d 树最近邻查询与逐个计算距离的暴力扫描对比。
+ */
+public class KdTreeTest {
+
+    @Test
+    public void nearestMatchesBruteForceOnRandomData() {
+        Random random = new Random(7);
+        int count = 5_000;
+        double[] xs = new double[count];
+        double[] zs = new double[count];
+        BitSet excluded = new BitSet();
+        for (int i = 0; i < count; i++) {
+            // 一部分坐标取整到粗网格上，制造大量相同的 x / z 和相同的距离
+            if (random.nextBoolean()) {
+                xs[i] = random.nextInt(20) * 100;
+                zs[i] = random.nextInt(20) * 100;
+            } else {
+                xs[i] = random.nextDouble() * 2000;
+                zs[i] = random.nextDouble() * 2000;
+            }
+            if (random.nextInt(10) == 0) {
+                excluded.set(i);
+            }
+        }
+        KdTree tree = KdTree.build(xs, zs, excluded);
+        assertEquals(count - excluded.cardinality(), tree.size());
+
+        for (int query = 0; query < 500; query++) {
+            double x = random.nextBoolean() ? random.nextInt(20) * 100 : random.nextDouble() * 2200 - 100;
+            double z = random.nextBoolean() ? random.nextInt(20) * 100 : random.nextDouble() * 2200 - 100;
+            double radius = random.nextInt(3) == 0 ? 0 : random.nextDouble() * 500;
+            int limit = 1 + random.nextInt(30);
+            assertArrayEquals(bruteForce(xs, zs, excluded, x, z, radius, limit), tree.nearest(x, z, radius, limit),
+                "x=" + x + " z=" + z + " radius=" + radius + " limit=" + limit);
+        }
+    }
+
+    @Test
+    public void buildsLargeSetWithEqualKeys() {
+        // 10 万个地标排成一列（x 全部相同）：两路切分在这里是平方时间
+        int count = 100_000;
+        double[] xs = new double[count];
+        double[] zs = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = 64;
+            zs[i] = i % 1000;
+        }
+        long start = System.nanoTime();
+        KdTree tree = KdTree.build(xs, zs, null);
+        long buildNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int[] nearest = tree.nearest(64, 500.2, 0, 10);
+        long treeNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        int[] expected = bruteForce(xs, zs, null, 64, 500.2, 0, 10);
+        long bruteNanos = System.nanoTime() - start;
+
+        assertArrayEquals(expected, nearest);
+        System.out.printf("[ToriiFind] k-d 树基准（%d 个地标，x 全部相同）：建树 %.1f ms，k-d 查询 %.3f ms，暴力扫描 %.3f ms%n",
+            count, buildNanos / 1e6, treeNanos / 1e6, bruteNanos / 1e6);
+    }
+
+    private static int[] bruteForce(double[] xs, double[] zs, BitSet excluded, double x, double z, double radius, int limit) {
+        double maxDistance = radius > 0 ? radius * radius : Double.POSITIVE_INFINITY;
+        List<double[]> candidates = new ArrayList<>();
+        for (int i = 0; i < xs.length; i++) {
+            if (excluded != null && excluded.get(i)) {
+                continue;
+            }
+            double dx = xs[i] - x;
+            double dz = zs[i] - z;
+            double distance = dx * dx + dz * dz;
+            if (distance <= maxDistance) {
+                candidates.add(new double[] {distance, i});
+            }
+        }
+        candidates.sort(Comparator.<double[]>comparingDouble(c -> c[0]).thenComparingDouble(c -> c[1]));
+        return candidates.stream().limit(limit).mapToInt(c -> (int) c[1]).toArray();
+    }
+}
@@ -0,0 +1,101 @@
+package com.fletime.toriifind.search;
+
+import com.fletime.toriifind.service.LynnApiService.LynnLandmark;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 拼音搜索基准：对比快照加载时预先计算拼音的 {@link LandmarkIndex} 与每次查询时逐个转换名称拼音的旧做法。
+ * 两种做法的结果先做一致性检查（索引还会按拼音首字母匹配，所以结果只会更多），再分别计时输出。
+ */
+public class PinyinSearchBenchmarkTest {
+
+    private static final int LANDMARKS = 20_000;
+    private static final int ROUNDS = 20;
+    private static final String CHARACTERS = "北京上海天津广州深圳南山东西湖河江门桥塔寺庙城镇村站";
+    private static final String[] QUERIES = {"beijing", "shan", "huhe", "qiaota", "zhen", "北京", "寺庙"};
+
+    @Test
+    public void precomputedPinyinMatchesPerQueryConversion() {
+        List<LynnLandmark> landmarks = syntheticLandmarks();
+
+        long buildStart = System.nanoTime();
+        LandmarkIndex index = LandmarkIndex.build(landmarks);
+        long buildNanos = System.nanoTime() - buildStart;
+
+        for (String query : QUERIES) {
+            List<LynnLandmark> expected = searchWithPerQueryConversion(landmarks, query);
+            HashSet<LynnLandmark> actual = new HashSet<>(index.searchByNameOrPinyin(query));
+            assertTrue(actual.containsAll(expected), "预计算拼音漏掉了结果: " + query);
+        }
+
+        // 预热后计时
+        long perQueryNanos = time(() -> {
+            for (String query : QUERIES) {
+                searchWithPerQueryConversion(landmarks, query);
+            }
+        });
+        long indexedNanos = time(() -> {
+            for (String query : QUERIES) {
+                index.searchByNameOrPinyin(query);
+            }
+        });
+
+        int queries = ROUNDS * QUERIES.length;
+        System.out.printf("[ToriiFind] 拼音搜索基准（%d 个地标）：建立索引 %.1f ms；每次查询转换拼音 %.3f ms/次，预计算拼音 %.3f ms/次%n",
+            LANDMARKS, buildNanos / 1e6, perQueryNanos / 1e6 / queries, indexedNanos / 1e6 / queries);
+    }
+
+    /**
+     * 旧做法：先按名称包含匹配，没有结果且关键字全为字母时逐个把名称转换为拼音再匹配
+     */
+    private static List<LynnLandmark> searchWithPerQueryConversion(List<LynnLandmark> landmarks, String keyword) {
+        List<LynnLandmark> results = new ArrayList<>();
+        for (LynnLandmark landmark : landmarks) {
+            if (landmark.getName().contains(keyword)) {
+                results.add(landmark);
+            }
+        }
+        if (results.isEmpty() && keyword.matches("^[a-zA-Z]+$")) {
+            String lowercaseKeyword = keyword.toLowerCase();
+            for (LynnLandmark landmark : landmarks) {
+                if (PinyinConverter.toPinyin(landmark.getName()).toLowerCase().contains(lowercaseKeyword)) {
+                    results.add(landmark);
+                }
+            }
+        }
+        return results;
+    }
+
+    private static long time(Runnable round) {
+        for (int i = 0; i < ROUNDS / 4; i++) {
+            round.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            round.run();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static List<LynnLandmark> syntheticLandmarks() {
+        Random random = new Random(42);
+        List<LynnLandmark> landmarks = new ArrayList<>(LANDMARKS);
+        for (int i = 0; i < LANDMARKS; i++) {
+            StringBuilder name = new StringBuilder();
+            int length = 2 + random.nextInt(5);
+            for (int j = 0; j < length; j++) {
+                name.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+            }
+            landmarks.add(new LynnLandmark(String.valueOf(i), name.toString(), "", "",
+                LynnLandmark.Coordinates.of(random.nextInt(20000) - 10000, 64, random.nextInt(20000) - 10000)));
+        }
+        return landmarks;
+    }
+}
@@ -0,0 +1,95 @@
+package com.fletime.toriifind.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 快照缓存：同一文件并发未命中时只加载一次，加载失败不留在缓存中。
+ */
+public class LandmarkSnapshotServiceTest {
+
+    private Path dir;
+
+    @BeforeEach
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("toriifind-snapshot");
+        LandmarkSnapshotService.invalidateAll();
+    }
+
+    @AfterEach
+    public void deleteDir() throws IOException {
+        LandmarkSnapshotService.invalidateAll();
+        try (var files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        Path file = dir.resolve("landmarks.json");
+        Files.writeString(file, data("v1"), StandardCharsets.UTF_8);
+
+        int threads = 8;
+        long misses = LandmarkSnapshotService.getMissCount();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<LandmarkSnapshotService.Snapshot>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return LandmarkSnapshotService.getSnapshot(file);
+                }));
+            }
+            start.countDown();
+
+            LandmarkSnapshotService.Snapshot first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<LandmarkSnapshotService.Snapshot> result : results) {
+                assertSame(first, result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals("v1", first.getVersion());
+            assertEquals(misses + 1, LandmarkSnapshotService.getMissCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedLoadIsRetried() throws Exception {
+        Path file = dir.resolve("broken.json");
+        Files.writeString(file, "{\"version\":", StandardCharsets.UTF_8);
+        assertThrows(Exception.class, () -> LandmarkSnapshotService.getSnapshot(file));
+        assertEquals(0, LandmarkSnapshotService.getCachedCount());
+
+        Files.writeString(file, data("v2"), StandardCharsets.UTF_8);
+        assertEquals("v2", LandmarkSnapshotService.getSnapshot(file).getVersion());
+    }
+
+    private static String data(String version) {
+        StringBuilder json = new StringBuilder("{\"version\":\"" + version + "\",\"landmarks\":[");
+        for (int i = 0; i < 100; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":\"").append(i).append("\",\"name\":\"鸟居").append(i).append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,502 @@
+package com.fletime.toriifind.service;
+
+import com.fletime.toriifind.config.SourceConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用本地 HTTP 服务器测试数据源下载：条件请求、原子替换、没有校验信息时的前 2KB 版本比较、
+ * 内容未变化时跳过替换、镜像对冲以及并行下载的并发数和期限。
+ */
+public class LocalDataServiceTest {
+
+    private HttpServer server;
+    private ExecutorService handlers;
+    private String baseUrl;
+    private final List<String> sourceNames = new ArrayList<>();
+    // 收到的请求：方法、路径和条件请求 / Range 头
+    private final List<String> requests = new ArrayList<>();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        Files.createDirectories(LocalDataService.getLocalDataDir());
+        handlers = Executors.newCachedThreadPool();
+        // 使用 127.0.0.1：熔断器按主机计数，与其它使用 localhost 的测试互不影响
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(handlers);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void stopServer() throws IOException {
+        server.stop(0);
+        handlers.shutdownNow();
+        for (String sourceName : sourceNames) {
+            Path file = LocalDataService.getLocalDataFile(sourceName);
+            Files.deleteIfExists(file);
+            for (Path tempFile : tempFiles(file)) {
+                Files.deleteIfExists(tempFile);
+            }
+            DataManifestService.remove(sourceName);
+        }
+    }
+
+    @Test
+    public void notModifiedKeepsFileAndModifiedTime() throws Exception {
+        byte[] body = data("v1");
+        serve("/data.json", exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().set("ETag", "\"v1\"");
+            respond(exchange, 200, body);
+        });
+        String sourceName = sourceName("etag");
+        SourceConfig.DataSource source = source(baseUrl + "/data.json");
+
+        assertTrue(LocalDataService.downloadDataSource(sourceName, source));
+        Path file = LocalDataService.getLocalDataFile(sourceName);
+        FileTime modified = FileTime.fromMillis(System.currentTimeMillis() - 3_600_000);
+        Files.setLastModifiedTime(file, modified);
+        // 修改时间变了，让清单重新按当前文件记录
+        DataManifestService.recordDownload(sourceName, baseUrl + "/data.json", "\"v1\"", null, file, "v1",
+            DataManifestService.sha256(file));
+
+        assertFalse(LocalDataService.checkAndUpdateDataSource(sourceName, source).get(10, TimeUnit.SECONDS));
+        assertArrayEquals(body, Files.readAllBytes(file));
+        assertEquals(modified, Files.getLastModifiedTime(file));
+        assertEquals(List.of("GET /data.json", "GET /data.json If-None-Match=\"v1\""), requests());
+    }
+
+    @Test
+    public void truncatedFileIsDownloadedWithoutConditionalHeaders() throws Exception {
+        byte[] body = data("v1");
+        serve("/data.json", exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().set("ETag", "\"v1\"");
+            respond(exchange, 200, body);
+        });
+        String sourceName = sourceName("truncated");
+        SourceConfig.DataSource source = source(baseUrl + "/data.json");
+
+        assertTrue(LocalDataService.downloadDataSource(sourceName, source));
+        Path file = LocalDataService.getLocalDataFile(sourceName);
+        // 文件被截断，与清单记录的大小不再一致
+        Files.write(file, Arrays.copyOf(body, body.length / 2));
+
+        assertTrue(LocalDataService.checkAndUpdateDataSource(sourceName, source).get(10, TimeUnit.SECONDS));
+        assertArrayEquals(body, Files.readAllBytes(file));
+        assertEquals(List.of("GET /data.json", "GET /data.json"), requests());
+    }
+
+    @Test
+    public void sourceNamedManifestDoesNotOverwriteManifest() throws Exception {
+        byte[] body = data("v1");
+        serve("/data.json", exchange -> {
+            exchange.getResponseHeaders().set("ETag", "\"v1\"");
+            respond(exchange, 200, body);
+        });
+        String other = sourceName("other");
+        sourceNames.add("manifest");
+
+        assertTrue(LocalDataService.downloadDataSource(other, source(baseUrl + "/data.json")));
+        assertTrue(LocalDataService.downloadDataSource("manifest", source(baseUrl + "/data.json")));
+
+        // 数据文件和清单互不覆盖，两个数据源的记录都还在
+        assertArrayEquals(body, Files.readAllBytes(LocalDataService.getLocalDataFile("manifest")));
+        String manifest = Files.readString(DataManifestService.getManifestFile());
+        assertTrue(manifest.contains("\"" + other + "\""));
+        assertTrue(manifest.contains("\"manifest\""));
+        assertEquals("v1", DataManifestService.getValidEntry(LocalDataService.getLocalDataFile("manifest")).getVersion());
+    }
+
+    @Test
+    public void changedContentReplacesFileAtomically() throws Exception {
+        byte[] first = data("v1");
+        byte[] second = data("v2");
+        CountDownLatch halfSent = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        AtomicInteger responses = new AtomicInteger();
+        serve("/data.json", exchange -> {
+            if (responses.getAndIncrement() == 0) {
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                respond(exchange, 200, first);
+                return;
+            }
+            // 第二次返回新内容：先发送一半，等测试检查过本地文件后再发送剩余部分
+            exchange.getResponseHeaders().set("ETag", "\"v2\"");
+            exchange.sendResponseHeaders(200, second.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(second, 0, second.length / 2);
+                out.flush();
+                halfSent.countDown();
+                finish.await(10, TimeUnit.SECONDS);
+                out.write(second, second.length / 2, second.length - second.length / 2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        String sourceName = sourceName("replace");
+        SourceConfig.DataSource source = source(baseUrl + "/data.json");
+        assertTrue(LocalDataService.downloadDataSource(sourceName, source));
+        Path file = LocalDataService.getLocalDataFile(sourceName);
+
+        CompletableFuture<Boolean> update = LocalDataService.checkAndUpdateDataSource(sourceName, source);
+        assertTrue(halfSent.await(10, TimeUnit.SECONDS));
+        // 下载进行中：读取方仍然看到完整的旧文件
+        assertArrayEquals(first, Files.readAllBytes(file));
+        finish.countDown();
+
+        assertTrue(update.get(10, TimeUnit.SECONDS));
+        assertArrayEquals(second, Files.readAllBytes(file));
+        assertEquals(List.of(), tempFiles(file));
+        assertEquals("v2", LocalDataService.getLocalVersion(file));
+    }
+
+    @Test
+    public void serverWithoutValidatorsFallsBackToRangeProbe() throws Exception {
+        byte[][] body = {data("v1")};
+        serve("/data.json", exchange -> {
+            // 不返回 ETag / Last-Modified；Range 请求只返回前几个字节
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null) {
+                int end = Integer.parseInt(range.substring(range.indexOf('-') + 1));
+                byte[] prefix = new byte[Math.min(end + 1, body[0].length)];
+                System.arraycopy(body[0], 0, prefix, 0, prefix.length);
+                exchange.getResponseHeaders().set("Content-Range", "bytes 0-" + (prefix.length - 1) + "/" + body[0].length);
+                respond(exchange, 206, prefix);
+            } else {
+                respond(exchange, 200, body[0]);
+            }
+        });
+        String sourceName = sourceName("range");
+        SourceConfig.DataSource source = source(baseUrl + "/data.json");
+        assertTrue(LocalDataService.downloadDataSource(sourceName, source));
+        Path file = LocalDataService.getLocalDataFile(sourceName);
+
+        // 版本相同：只读取前 2KB，不下载完整文件
+        assertFalse(LocalDataService.checkAndUpdateDataSource(sourceName, source).get(10, TimeUnit.SECONDS));
+        assertEquals(List.of("GET /data.json", "GET /data.json Range=bytes=0-2047"), requests());
+
+        // 版本不同：读取前 2KB 后下载完整文件
+        body[0] = data("v2");
+        assertTrue(LocalDataService.checkAndUpdateDataSource(sourceName, source).get(10, TimeUnit.SECONDS));
+        assertArrayEquals(body[0], Files.readAllBytes(file));
+        assertEquals(List.of("GET /data.json", "GET /data.json Range=bytes=0-2047",
+            "GET /data.json Range=bytes=0-2047", "GET /data.json"), requests());
+    }
+
+    @Test
+    public void unchangedContentIsNotReplaced() throws Exception {
+        byte[] body = data("v1");
+        // 服务器忽略条件请求，总是返回完整内容
+        serve("/data.json", exchange -> {
+            exchange.getResponseHeaders().set("ETag", "\"v1\"");
+            respond(exchange, 200, body);
+        });
+        String sourceName = sourceName("unchanged");
+        SourceConfig.DataSource source = source(baseUrl + "/data.json");
+        assertTrue(LocalDataService.downloadDataSource(sourceName, source));
+        Path file = LocalDataService.getLocalDataFile(sourceName);
+        String sha256 = DataManifestService.getValidEntry(file).getSha256();
+
+        // 等待一段时间，若文件被替换修改时间一定会变化
+        FileTime modified = Files.getLastModifiedTime(file);
+        Thread.sleep(50);
+        assertFalse(LocalDataService.downloadDataSource(sourceName, source));
+        assertEquals(modified, Files.getLastModifiedTime(file));
+        assertEquals(sha256, DataManifestService.getValidEntry(file).getSha256());
+        assertEquals(List.of(), tempFiles(file));
+    }
+
+    @Test
+    public void concurrentQueriesDownloadMissingFileOnce() throws Exception {
+        byte[] body = data("v1");
+        serve("/data.json", exchange -> {
+            sleep(200);
+            respond(exchange, 200, body);
+        });
+        String sourceName = sourceName("ensure");
+        SourceConfig.DataSource source = source(baseUrl + "/data.json");
+
+        List<CompletableFuture<Path>> queries = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            queries.add(TaskExecutorService.supplyIo(() -> LocalDataService.ensureLocalData(sourceName, source)));
+        }
+        for (CompletableFuture<Path> query : queries) {
+            assertArrayEquals(body, Files.readAllBytes(query.get(10, TimeUnit.SECONDS)));
+        }
+        assertEquals(List.of("GET /data.json"), requests());
+    }
+
+    @Test
+    public void mirrorWithOnlyHeadersLosesToHedgedMirror() throws Exception {
+        byte[] body = data("mirror");
+        // 主地址立即返回响应头，但响应体迟迟不到
+        serve("/stalled.json", exchange -> {
+            exchange.sendResponseHeaders(200, body.length);
+            sleep(10_000);
+            exchange.close();
+        });
+        serve("/mirror.json", exchange -> respond(exchange, 200, body));
+
+        long start = System.nanoTime();
+        HttpService.HedgedResponse hedged = HttpService.sendHedged(
+            List.of(baseUrl + "/stalled.json", baseUrl + "/mirror.json"),
+            url -> HttpService.request(url, HttpService.RequestKind.DOWNLOAD).build(),
+            status -> status == 200, Duration.ofMillis(300), HttpService.RequestKind.DOWNLOAD);
+        try (var in = hedged.getBody()) {
+            assertArrayEquals(body, in.readAllBytes());
+        }
+        assertEquals(baseUrl + "/mirror.json", hedged.getUrl());
+        assertTrue(elapsedMs(start) < 5_000);
+    }
+
+    @Test
+    public void mirrorsThatStallAfterHeadersFailWithinDeadline() throws Exception {
+        byte[] body = data("stalled");
+        serve("/stalled.json", exchange -> {
+            exchange.sendResponseHeaders(200, body.length);
+            sleep(10_000);
+            exchange.close();
+        });
+
+        // 所有地址都只返回响应头，首字节期限到期后整个请求失败，而不是一直等待
+        long start = System.nanoTime();
+        assertThrows(HttpTimeoutException.class, () -> HttpService.sendHedged(
+            List.of(baseUrl + "/stalled.json", baseUrl + "/stalled.json?2"),
+            url -> HttpService.request(url, HttpService.RequestKind.VERSION).build(),
+            status -> status == 200, Duration.ofMillis(300), HttpService.RequestKind.VERSION));
+        assertTrue(elapsedMs(start) < 5_000);
+    }
+
+    @Test
+    public void bodyThatStallsMidwayFailsWithReadTimeout() throws Exception {
+        byte[] body = data("stalled");
+        // 先发出一部分响应体，然后停住
+        serve("/partial.json", exchange -> {
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body, 0, body.length / 2);
+            out.flush();
+            sleep(10_000);
+            exchange.close();
+        });
+
+        long start = System.nanoTime();
+        var response = HttpService.get(baseUrl + "/partial.json", HttpService.RequestKind.VERSION);
+        assertThrows(HttpTimeoutException.class, () -> HttpService.bodyAsString(response));
+        assertTrue(elapsedMs(start) < 5_000);
+    }
+
+    @Test
+    public void failedAttemptDoesNotShortenLaterHedgeDelays() throws Exception {
+        serve("/missing.json", exchange -> respond(exchange, 404, new byte[0]));
+        serve("/stalled.json", exchange -> {
+            sleep(10_000);
+            exchange.close();
+        });
+        serve("/mirror.json", exchange -> respond(exchange, 200, data("mirror")));
+
+        // 第一个地址立即失败，第二个地址随即开始；之后每个地址各自等待完整的对冲延迟
+        long start = System.nanoTime();
+        HttpService.HedgedResponse hedged = HttpService.sendHedged(
+            List.of(baseUrl + "/missing.json", baseUrl + "/stalled.json", baseUrl + "/stalled.json?2", baseUrl + "/mirror.json"),
+            url -> HttpService.request(url, HttpService.RequestKind.DOWNLOAD).build(),
+            status -> status == 200, Duration.ofMillis(400), HttpService.RequestKind.DOWNLOAD);
+        long elapsed = elapsedMs(start);
+        HttpService.discard(hedged.getResponse());
+
+        assertEquals(baseUrl + "/mirror.json", hedged.getUrl());
+        assertTrue(elapsed >= 750, "对冲延迟被提前的失败缩短: " + elapsed + " ms");
+    }
+
+    @Test
+    public void parallelDownloadsRespectConcurrencyAndDeadline() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        serve("/slow.json", exchange -> {
+            int current = active.incrementAndGet();
+            maxActive.accumulateAndGet(current, Math::max);
+            sleep(300);
+            active.decrementAndGet();
+            respond(exchange, 200, data("slow"));
+        });
+        serve("/stalled.json", exchange -> {
+            sleep(10_000);
+            exchange.close();
+        });
+
+        Map<String, SourceConfig.DataSource> sources = new LinkedHashMap<>();
+        String stalled = sourceName("stalled");
+        sources.put(stalled, source(baseUrl + "/stalled.json"));
+        List<String> slow = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String sourceName = sourceName("slow" + i);
+            slow.add(sourceName);
+            sources.put(sourceName, source(baseUrl + "/slow.json?" + i));
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<Void> all = LocalDataService.initializeAllDataSources(sources, 2, 1);
+        // 先完成的数据源不必等待其它数据源
+        LocalDataService.whenReady(slow.get(0)).get(10, TimeUnit.SECONDS);
+        assertTrue(LocalDataService.isLocalDataExists(slow.get(0)));
+        assertFalse(all.isDone());
+
+        all.get(10, TimeUnit.SECONDS);
+        assertTrue(elapsedMs(start) < 5_000);
+        assertTrue(maxActive.get() <= 2, "同时进行的下载数: " + maxActive.get());
+        for (String sourceName : slow) {
+            assertTrue(LocalDataService.isLocalDataExists(sourceName), sourceName);
+        }
+        // 超过期限的下载被中止，不留下本地文件或临时文件
+        Path stalledFile = LocalDataService.getLocalDataFile(stalled);
+        assertFalse(Files.exists(stalledFile));
+        assertEquals(List.of(), tempFiles(stalledFile));
+        assertTrue(LocalDataService.isReady(stalled));
+    }
+
+    @Test
+    public void overlappingDownloadsKeepManifestConsistent() throws Exception {
+        AtomicInteger responses = new AtomicInteger();
+        serve("/data.json", exchange -> {
+            // 每次返回不同的内容，慢慢发送，让两次下载重叠
+            byte[] body = data("v" + responses.incrementAndGet());
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int offset = 0; offset < body.length; offset += 512) {
+                    out.write(body, offset, Math.min(512, body.length - offset));
+                    out.flush();
+                    sleep(20);
+                }
+            }
+        });
+        String sourceName = sourceName("overlap");
+        SourceConfig.DataSource source = source(baseUrl + "/data.json");
+
+        List<CompletableFuture<Boolean>> downloads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            downloads.add(TaskExecutorService.supplyIo(() -> LocalDataService.downloadDataSource(sourceName, source)));
+        }
+        for (CompletableFuture<Boolean> download : downloads) {
+            assertTrue(download.get(20, TimeUnit.SECONDS));
+        }
+
+        Path file = LocalDataService.getLocalDataFile(sourceName);
+        DataManifestService.Entry entry = DataManifestService.getValidEntry(file);
+        assertEquals(DataManifestService.sha256(file), entry.getSha256());
+        assertEquals(LocalDataService.getLocalVersion(file), entry.getVersion());
+        assertEquals(List.of(), tempFiles(file));
+    }
+
+    /**
+     * 目标文件旁遗留的临时文件
+     */
+    private static List<Path> tempFiles(Path file) throws IOException {
+        try (var files = Files.list(file.getParent())) {
+            return files.filter(path -> path.getFileName().toString().startsWith(file.getFileName().toString())
+                && path.getFileName().toString().endsWith(".tmp")).toList();
+        }
+    }
+
+    private void serve(String path, HttpHandler handler) {
+        server.createContext(path, exchange -> {
+            StringBuilder request = new StringBuilder(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+            for (String header : new String[] {"If-None-Match", "If-Modified-Since", "Range"}) {
+                String value = exchange.getRequestHeaders().getFirst(header);
+                if (value != null) {
+                    request.append(' ').append(header).append('=').append(value);
+                }
+            }
+            synchronized (requests) {
+                requests.add(request.toString());
+            }
+            handler.handle(exchange);
+        });
+    }
+
+    private List<String> requests() {
+        synchronized (requests) {
+            return List.copyOf(requests);
+        }
+    }
+
+    private String sourceName(String name) {
+        String sourceName = "test-" + name + "-" + server.getAddress().getPort();
+        sourceNames.add(sourceName);
+        return sourceName;
+    }
+
+    private static SourceConfig.DataSource source(String url) {
+        return new SourceConfig.DataSource(url, url, true, new String[0], null);
+    }
+
+    /**
+     * 根级别带有 version 的数据文件，长度超过 2KB
+     */
+    private static byte[] data(String version) {
+        StringBuilder json = new StringBuilder("{\"version\":\"" + version + "\",\"landmarks\":[");
+        for (int i = 0; i < 100; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":\"").append(i).append("\",\"name\":\"鸟居").append(i).append("\"}");
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
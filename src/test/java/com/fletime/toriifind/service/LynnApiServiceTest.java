@@ -0,0 +1,65 @@
+package com.fletime.toriifind.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * API 查询的错误处理：无法解析的响应应当是失败，而不是被缓存的空结果。
+ */
+public class LynnApiServiceTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/landmarks", exchange -> {
+            // 第一次返回格式错误的内容，之后返回正常的地标数组
+            String json = requests.getAndIncrement() == 0
+                ? "<html>维护中</html>"
+                : "[{\"id\":\"1\",\"name\":\"鸟居\",\"grade\":\"A\",\"coordinates\":{\"x\":\"1\",\"y\":\"64\",\"z\":\"2\"}}]";
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void malformedResponseFailsAndIsNotCached() throws Exception {
+        ExecutionException error = assertThrows(ExecutionException.class,
+            () -> LynnApiService.searchLandmarksAsync(baseUrl, "zth", "鸟居").get(10, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof IOException, String.valueOf(error.getCause()));
+
+        List<LynnApiService.LynnLandmark> landmarks =
+            LynnApiService.searchLandmarksAsync(baseUrl, "zth", "鸟居").get(10, TimeUnit.SECONDS);
+        assertEquals(1, landmarks.size());
+        assertEquals("鸟居", landmarks.get(0).getName());
+        assertEquals(2, requests.get());
+    }
+}
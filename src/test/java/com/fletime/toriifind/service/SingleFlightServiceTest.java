@@ -0,0 +1,81 @@
+package com.fletime.toriifind.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 合并请求的取消：最后一个调用者放弃请求的同时有新调用者加入时，新调用者不能拿到被中止的请求。
+ */
+public class SingleFlightServiceTest {
+
+    @Test
+    public void newcomerNeverJoinsAbortedFlight() throws Exception {
+        for (int round = 0; round < 50_000; round++) {
+            String key = "race-" + round;
+            List<CompletableFuture<String>> sources = new CopyOnWriteArrayList<>();
+            CompletableFuture<String> first = SingleFlightService.execute(key, () -> newSource(sources));
+
+            CountDownLatch go = new CountDownLatch(1);
+            AtomicReference<CompletableFuture<String>> second = new AtomicReference<>();
+            Thread canceller = Thread.ofPlatform().start(() -> {
+                await(go);
+                first.cancel(true);
+            });
+            Thread newcomer = Thread.ofPlatform().start(() -> {
+                await(go);
+                second.set(SingleFlightService.execute(key, () -> newSource(sources)));
+            });
+            go.countDown();
+            canceller.join();
+            newcomer.join();
+
+            // 没有被中止的请求正常完成；新调用者要么共享了仍在进行的请求，要么重新发起了请求
+            for (CompletableFuture<String> source : sources) {
+                source.complete("value");
+            }
+            assertEquals("value", second.get().get(5, TimeUnit.SECONDS), "round " + round);
+        }
+        assertTrue(SingleFlightService.getInFlightCount() == 0);
+    }
+
+    @Test
+    public void lastCancellationAbortsSharedRequest() {
+        List<CompletableFuture<String>> sources = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> first = SingleFlightService.execute("abort", () -> newSource(sources));
+        CompletableFuture<String> second = SingleFlightService.execute("abort", () -> newSource(sources));
+        assertEquals(1, sources.size());
+
+        first.cancel(true);
+        assertTrue(!sources.get(0).isCancelled());
+        second.cancel(true);
+        assertTrue(sources.get(0).isCancelled());
+
+        // 被中止的请求已经移除，新的调用会重新发起
+        SingleFlightService.execute("abort", () -> newSource(sources));
+        assertEquals(2, sources.size());
+        sources.get(1).complete("value");
+    }
+
+    private static CompletableFuture<String> newSource(List<CompletableFuture<String>> sources) {
+        CompletableFuture<String> source = new CompletableFuture<>();
+        sources.add(source);
+        return source;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}